@@ -0,0 +1,45 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiling and running each workload from source on a new engine, the
+ * way a script run from the command line without cache does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"fib", "binary_trees", "zoo", "strings", "closures", "instantiation", "nested_loops", "modules"})
+    public String workload;
+
+    private String source;
+
+    @Setup
+    public void setup() throws IOException {
+        source = Workloads.source(workload);
+    }
+
+    @Benchmark
+    public Map<String, Object> compileAndRun() {
+        return Workloads.engine().compile(source).run(Map.of());
+    }
+}
@@ -0,0 +1,66 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanning, parsing and resolving each workload on its own, every phase
+ * starting from the output of the previous one prepared in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+
+    @Param({"fib", "binary_trees", "zoo", "strings", "closures", "instantiation", "nested_loops", "modules"})
+    public String workload;
+
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+    private final ErrorReporter reporter = new ErrorReporter(new PrintStream(OutputStream.nullOutputStream()));
+
+    @Setup
+    public void setup() throws IOException {
+        source = Workloads.source(workload);
+        tokens = new Scanner(source, reporter).scanTokens();
+        statements = new Parser(tokens, reporter).parse();
+    }
+
+    @Benchmark
+    public List<Token> scan() {
+        return new Scanner(source, reporter).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, reporter).parse();
+    }
+
+    @Benchmark
+    public Map<Expr, Integer> resolve() {
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+        resolver.endScope();
+        return resolver.getLocals();
+    }
+}
@@ -0,0 +1,45 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Running each workload on a fresh interpreter, compiled once in setup.
+ * Imported modules are compiled once as well, but run again every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"fib", "binary_trees", "zoo", "strings", "closures", "instantiation", "nested_loops", "modules"})
+    public String workload;
+
+    private Script script;
+
+    @Setup
+    public void setup() throws IOException {
+        script = Workloads.engine().compile(Workloads.source(workload));
+    }
+
+    @Benchmark
+    public Map<String, Object> interpret() {
+        return script.run(Map.of());
+    }
+}
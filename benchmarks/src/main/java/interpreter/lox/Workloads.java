@@ -0,0 +1,35 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The checked-in Lox programs the benchmarks run. They are read from the
+ * directory in the {@code lox.workloads} system property, by default the
+ * {@code workloads} directory of the benchmarks module.
+ */
+final class Workloads {
+    static final Path DIRECTORY = Paths.get(System.getProperty("lox.workloads", "workloads")).toAbsolutePath();
+
+    private Workloads() {
+    }
+
+    static String source(String name) throws IOException {
+        return Files.readString(DIRECTORY.resolve(name + ".lox"), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An engine without script cache that finds modules among the workloads
+     * and throws away everything the programs print.
+     */
+    static LoxEngine engine() {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        return new LoxEngine(null, new ModulePath(List.of(DIRECTORY)), false, false, discard, discard);
+    }
+}
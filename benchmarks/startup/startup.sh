@@ -0,0 +1,27 @@
+#!/bin/sh
+# Measures the wall time of running hello.lox, from plain classes without
+# any cache and through bin/lox with the class data sharing archive.
+# Build first with: mvn -Pcds package
+# Usage: benchmarks/startup/startup.sh [runs]
+dir=$(cd "$(dirname "$0")/../.." && pwd)
+runs=${1:-20}
+java="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+hello="$dir/benchmarks/startup/hello.lox"
+
+measure() {
+    label=$1
+    shift
+    "$@" > /dev/null
+    start=$(date +%s%N)
+    i=0
+    while [ $i -lt "$runs" ]; do
+        "$@" > /dev/null
+        i=$((i + 1))
+    done
+    end=$(date +%s%N)
+    echo "$label: $(( (end - start) / runs / 1000000 )) ms"
+}
+
+measure "classes, no cache" "$java" -Xshare:off -cp "$dir/target/classes" interpreter.lox.Lox --no-cache "$hello"
+measure "classes, default CDS" "$java" -cp "$dir/target/classes" interpreter.lox.Lox "$hello"
+measure "bin/lox with archive" "$dir/bin/lox" "$hello"
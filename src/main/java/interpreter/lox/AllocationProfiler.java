@@ -0,0 +1,130 @@
+package interpreter.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the objects Lox code makes the interpreter allocate, by the
+ * module and line of the statement that caused them. Sizes are estimates
+ * of the shallow size of each object on a 64-bit JVM with compressed
+ * pointers, including the empty map of instances and environments but not
+ * what is later stored in it.
+ */
+public class AllocationProfiler {
+    private static final int TOP_SITES = 30;
+
+    enum Kind {
+        INSTANCE("instances", 72),
+        FIELD("fields", 32),
+        FUNCTION("functions", 40),
+        STRING("strings", 24),
+        ENVIRONMENT("environments", 72);
+
+        final String label;
+        final long bytes;
+
+        Kind(String label, long bytes) {
+            this.label = label;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Map<Site, Counts> sites = new ConcurrentHashMap<>();
+
+    AllocationProfiler() {
+    }
+
+    void record(String module, int line, Kind kind) {
+        record(module, line, kind, kind.bytes);
+    }
+
+    void record(String module, int line, Kind kind, long bytes) {
+        Counts counts = sites.computeIfAbsent(new Site(module, line), site -> new Counts());
+        counts.objects[kind.ordinal()].increment();
+        counts.bytes.add(bytes);
+    }
+
+    /**
+     * Estimated size of a string of {@code length} Latin-1 characters: the
+     * string object plus its byte array, both rounded up to 8 bytes.
+     */
+    static long stringBytes(int length) {
+        return Kind.STRING.bytes + ((16 + length + 7) & ~7L);
+    }
+
+    /**
+     * Prints the totals per kind and the sites that allocated the most bytes.
+     */
+    public void report(PrintStream out) {
+        List<Map.Entry<Site, Counts>> rows = new ArrayList<>(sites.entrySet());
+        rows.sort((a, b) -> Long.compare(b.getValue().bytes.sum(), a.getValue().bytes.sum()));
+
+        long[] totals = new long[Kind.values().length];
+        long totalBytes = 0;
+        for (Map.Entry<Site, Counts> row : rows) {
+            for (Kind kind : Kind.values()) {
+                totals[kind.ordinal()] += row.getValue().objects[kind.ordinal()].sum();
+            }
+            totalBytes += row.getValue().bytes.sum();
+        }
+
+        out.printf("Allocations: %d sites, about %d bytes%n", rows.size(), totalBytes);
+        for (Kind kind : Kind.values()) {
+            out.printf("  %12d %s%n", totals[kind.ordinal()], kind.label);
+        }
+        out.println();
+        out.printf("  %12s %10s %10s %10s %10s %12s  %s%n",
+                "bytes", "instances", "fields", "functions", "strings", "environments", "site");
+        for (Map.Entry<Site, Counts> row : rows.subList(0, Math.min(TOP_SITES, rows.size()))) {
+            Counts counts = row.getValue();
+            out.printf("  %12d %10d %10d %10d %10d %12d  %s%n",
+                    counts.bytes.sum(),
+                    counts.objects[Kind.INSTANCE.ordinal()].sum(),
+                    counts.objects[Kind.FIELD.ordinal()].sum(),
+                    counts.objects[Kind.FUNCTION.ordinal()].sum(),
+                    counts.objects[Kind.STRING.ordinal()].sum(),
+                    counts.objects[Kind.ENVIRONMENT.ordinal()].sum(),
+                    row.getKey());
+        }
+    }
+
+    private static final class Site {
+        final String module;
+        final int line;
+
+        Site(String module, int line) {
+            this.module = module;
+            this.line = line;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Site site && site.line == line && site.module.equals(module);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * module.hashCode() + line;
+        }
+
+        @Override
+        public String toString() {
+            return module + ":" + line;
+        }
+    }
+
+    private static class Counts {
+        final LongAdder[] objects = new LongAdder[Kind.values().length];
+        final LongAdder bytes = new LongAdder();
+
+        Counts() {
+            for (int i = 0; i < objects.length; i++) {
+                objects[i] = new LongAdder();
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package interpreter.lox;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static interpreter.lox.AstWriter.*;
+
+/**
+ * Reads back a {@link CompiledScript} written by {@link AstWriter}. Only
+ * ever creates syntax tree nodes, so a damaged or crafted file fails with
+ * an {@link IOException} instead of building anything else.
+ */
+class AstReader {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final DataInputStream in;
+    private final Map<Expr, Integer> locals = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private AstReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    static CompiledScript read(DataInputStream in) throws IOException {
+        AstReader reader = new AstReader(in);
+        List<Stmt> statements = reader.statements();
+        int count = reader.number();
+        List<String> imports = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            imports.add(reader.string());
+        }
+        return new CompiledScript(statements, reader.locals, imports);
+    }
+
+    private Expr expression() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case ASSIGN: {
+                Token name = token();
+                return local(new Expr.Assign(name, expression()));
+            }
+            case VARIABLE:
+                return local(new Expr.Variable(token()));
+            case TERNARY: {
+                Expr leftHand = expression();
+                Expr left = expression();
+                return new Expr.Ternary(leftHand, left, expression());
+            }
+            case LOGICAL: {
+                Expr left = expression();
+                Token operator = token();
+                return new Expr.Logical(left, operator, expression());
+            }
+            case SET: {
+                Expr object = expression();
+                Token name = token();
+                return new Expr.Set(object, name, expression());
+            }
+            case SUPER: {
+                Token keyword = token();
+                return local(new Expr.Super(keyword, token()));
+            }
+            case THIS:
+                return local(new Expr.This(token()));
+            case BINARY: {
+                Expr left = expression();
+                Token operator = token();
+                return new Expr.Binary(left, operator, expression());
+            }
+            case UNARY: {
+                Token operator = token();
+                return new Expr.Unary(operator, expression());
+            }
+            case LITERAL:
+                return new Expr.Literal(value());
+            case CALL: {
+                Expr callee = expression();
+                Token paren = token();
+                int count = number();
+                List<Expr> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    arguments.add(expression());
+                }
+                return new Expr.Call(callee, paren, arguments);
+            }
+            case GET: {
+                Expr object = expression();
+                return new Expr.Get(object, token());
+            }
+            case GROUPING:
+                return new Expr.Grouping(expression());
+            case FUNCTION_EXPR: {
+                int count = number();
+                List<Token> parameters = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    parameters.add(token());
+                }
+                return new Expr.AnFunction(parameters, statements());
+            }
+            default:
+                throw new StreamCorruptedException("Unknown expression tag " + tag + ".");
+        }
+    }
+
+    private Stmt statement() throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == NULL) {
+            return null;
+        }
+        int line = number();
+        Stmt stmt;
+        switch (tag) {
+            case CLASS: {
+                Token name = token();
+                Expr superclass = expression();
+                if (superclass != null && !(superclass instanceof Expr.Variable)) {
+                    throw new StreamCorruptedException("Superclass is not a variable.");
+                }
+                int count = number();
+                List<Stmt.Function> methods = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    if (!(statement() instanceof Stmt.Function method)) {
+                        throw new StreamCorruptedException("Method is not a function.");
+                    }
+                    methods.add(method);
+                }
+                stmt = new Stmt.Class(name, (Expr.Variable) superclass, methods);
+                break;
+            }
+            case VAR: {
+                Token name = token();
+                stmt = new Stmt.Var(name, expression());
+                break;
+            }
+            case EXPRESSION:
+                stmt = new Stmt.Expression(expression());
+                break;
+            case FUNCTION: {
+                Token name = token();
+                Expr function = expression();
+                stmt = new Stmt.Function(name, function, string());
+                break;
+            }
+            case IF: {
+                Expr condition = expression();
+                Stmt thenBranch = statement();
+                stmt = new Stmt.If(condition, thenBranch, statement());
+                break;
+            }
+            case WHILE: {
+                Expr condition = expression();
+                stmt = new Stmt.While(condition, statement());
+                break;
+            }
+            case PRINT:
+                stmt = new Stmt.Print(expression());
+                break;
+            case BLOCK:
+                stmt = new Stmt.Block(statements());
+                break;
+            case RETURN: {
+                Token keyWord = token();
+                stmt = new Stmt.Return(keyWord, expression());
+                break;
+            }
+            case BREAK:
+                stmt = new Stmt.Break(token());
+                break;
+            case IMPORT: {
+                Token name = token();
+                stmt = new Stmt.Import(name, token());
+                break;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown statement tag " + tag + ".");
+        }
+        stmt.line = line;
+        return stmt;
+    }
+
+    private List<Stmt> statements() throws IOException {
+        int count = number();
+        List<Stmt> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(statement());
+        }
+        return statements;
+    }
+
+    private Expr local(Expr expr) throws IOException {
+        int distance = number();
+        if (distance != 0) {
+            locals.put(expr, distance - 1);
+        }
+        return expr;
+    }
+
+    private Token token() throws IOException {
+        int type = in.readUnsignedByte();
+        if (type == NULL) {
+            return null;
+        }
+        if (type > TOKEN_TYPES.length) {
+            throw new StreamCorruptedException("Unknown token type " + type + ".");
+        }
+        String lexeme = string();
+        Object literal = value();
+        return new Token(TOKEN_TYPES[type - 1], lexeme, literal, number());
+    }
+
+    private Object value() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case NUMBER:
+                return in.readDouble();
+            case STRING:
+                return string();
+            default:
+                throw new StreamCorruptedException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    private String string() throws IOException {
+        int index = number();
+        if (index != 0) {
+            if (index > strings.size()) {
+                throw new StreamCorruptedException("Unknown string " + index + ".");
+            }
+            return strings.get(index - 1);
+        }
+        byte[] bytes = new byte[number()];
+        in.readFully(bytes);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(string);
+        return string;
+    }
+
+    private int number() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Number out of range.");
+    }
+}
@@ -0,0 +1,388 @@
+package interpreter.lox;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link CompiledScript} in the compact form read back by
+ * {@link AstReader}. Every node is a tag byte followed by its fields, the
+ * distance the {@link Resolver} computed for a variable is written right
+ * after the node it belongs to, and every string is written once and
+ * referred to by number after that. Numbers are written as variable
+ * length integers, so small lines and counts take a single byte.
+ */
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    static final int NULL = 0;
+
+    static final int ASSIGN = 1;
+    static final int VARIABLE = 2;
+    static final int TERNARY = 3;
+    static final int LOGICAL = 4;
+    static final int SET = 5;
+    static final int SUPER = 6;
+    static final int THIS = 7;
+    static final int BINARY = 8;
+    static final int UNARY = 9;
+    static final int LITERAL = 10;
+    static final int CALL = 11;
+    static final int GET = 12;
+    static final int GROUPING = 13;
+    static final int FUNCTION_EXPR = 14;
+
+    static final int CLASS = 20;
+    static final int VAR = 21;
+    static final int EXPRESSION = 22;
+    static final int FUNCTION = 23;
+    static final int IF = 24;
+    static final int WHILE = 25;
+    static final int PRINT = 26;
+    static final int BLOCK = 27;
+    static final int RETURN = 28;
+    static final int BREAK = 29;
+    static final int IMPORT = 30;
+
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int NUMBER = 3;
+    static final int STRING = 4;
+
+    private final DataOutputStream out;
+    private final Map<Expr, Integer> locals;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    private AstWriter(DataOutputStream out, Map<Expr, Integer> locals) {
+        this.out = out;
+        this.locals = locals;
+    }
+
+    static void write(DataOutputStream out, CompiledScript script) throws IOException {
+        AstWriter writer = new AstWriter(out, script.locals);
+        try {
+            writer.statements(script.statements);
+            writer.number(script.imports.size());
+            for (String name : script.imports) {
+                writer.string(name);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        tag(ASSIGN);
+        token(expr.name);
+        expression(expr.value);
+        local(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        tag(VARIABLE);
+        token(expr.name);
+        local(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        tag(TERNARY);
+        expression(expr.leftHand);
+        expression(expr.left);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        tag(LOGICAL);
+        expression(expr.left);
+        token(expr.operator);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        tag(SET);
+        expression(expr.object);
+        token(expr.name);
+        expression(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        tag(SUPER);
+        token(expr.keyword);
+        token(expr.method);
+        local(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        tag(THIS);
+        token(expr.keyword);
+        local(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        tag(BINARY);
+        expression(expr.left);
+        token(expr.operator);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        tag(UNARY);
+        token(expr.operator);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        tag(LITERAL);
+        value(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        tag(CALL);
+        expression(expr.callee);
+        token(expr.paren);
+        number(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            expression(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        tag(GET);
+        expression(expr.object);
+        token(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        tag(GROUPING);
+        expression(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitAnFunctionExpr(Expr.AnFunction expr) {
+        tag(FUNCTION_EXPR);
+        number(expr.parameters.size());
+        for (Token parameter : expr.parameters) {
+            token(parameter);
+        }
+        statements(expr.body);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        tag(CLASS, stmt);
+        token(stmt.name);
+        expression(stmt.superclass);
+        number(stmt.methods.size());
+        for (Stmt.Function method : stmt.methods) {
+            method.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        tag(VAR, stmt);
+        token(stmt.name);
+        expression(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        tag(EXPRESSION, stmt);
+        expression(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        tag(FUNCTION, stmt);
+        token(stmt.name);
+        expression(stmt.function);
+        string(stmt.kind);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        tag(IF, stmt);
+        expression(stmt.condition);
+        statement(stmt.thenBranch);
+        statement(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        tag(WHILE, stmt);
+        expression(stmt.condition);
+        statement(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        tag(PRINT, stmt);
+        expression(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        tag(BLOCK, stmt);
+        statements(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        tag(RETURN, stmt);
+        token(stmt.keyWord);
+        expression(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        tag(BREAK, stmt);
+        token(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        tag(IMPORT, stmt);
+        token(stmt.name);
+        token(stmt.alias);
+        return null;
+    }
+
+    private void statements(List<Stmt> statements) {
+        number(statements.size());
+        for (Stmt statement : statements) {
+            statement(statement);
+        }
+    }
+
+    private void statement(Stmt stmt) {
+        if (stmt == null) {
+            tag(NULL);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    private void expression(Expr expr) {
+        if (expr == null) {
+            tag(NULL);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void tag(int tag, Stmt stmt) {
+        tag(tag);
+        number(stmt.line);
+    }
+
+    private void local(Expr expr) {
+        Integer distance = locals.get(expr);
+        // 0 for a global, the distance plus one otherwise
+        number(distance == null ? 0 : distance + 1);
+    }
+
+    private void token(Token token) {
+        if (token == null) {
+            tag(NULL);
+            return;
+        }
+        tag(token.type.ordinal() + 1);
+        string(token.lexeme);
+        value(token.literal);
+        number(token.line);
+    }
+
+    private void value(Object value) {
+        if (value == null) {
+            tag(NULL);
+        } else if (value instanceof Boolean bool) {
+            tag(bool ? TRUE : FALSE);
+        } else if (value instanceof Double number) {
+            tag(NUMBER);
+            try {
+                out.writeDouble(number);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            tag(STRING);
+            string((String) value);
+        }
+    }
+
+    private void string(String string) {
+        Integer index = strings.get(string);
+        if (index != null) {
+            number(index + 1);
+            return;
+        }
+        strings.put(string, strings.size());
+        number(0);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        number(bytes.length);
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void tag(int tag) {
+        try {
+            out.writeByte(tag);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void number(int value) {
+        try {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package interpreter.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Runs many scripts in one JVM. Every script gets its own engine, so its
+ * globals, modules and output are its own, and the scripts run in parallel
+ * on a fixed number of worker threads. Output of each script is captured
+ * and printed in the order the scripts were given, followed by a summary.
+ */
+class BatchRunner {
+    private final ScriptCache cache;
+    private final ModulePath modulePath;
+    private final boolean lazyModules;
+    private final boolean concurrent;
+    private final int jobs;
+
+    BatchRunner(ScriptCache cache, ModulePath modulePath, boolean lazyModules, boolean concurrent, int jobs) {
+        this.cache = cache;
+        this.modulePath = modulePath;
+        this.lazyModules = lazyModules;
+        this.concurrent = concurrent;
+        this.jobs = jobs;
+    }
+
+    /**
+     * Expands {@code paths} to scripts, directories contribute every
+     * {@code .lox} file below them in name order.
+     */
+    static List<Path> scripts(String[] paths) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+        for (String path : paths) {
+            Path file = Paths.get(path);
+            if (!Files.isDirectory(file)) {
+                scripts.add(file);
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(file)) {
+                files.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(".lox"))
+                        .sorted()
+                        .forEach(scripts::add);
+            }
+        }
+        return scripts;
+    }
+
+    /**
+     * Runs {@code scripts}, prints their output and a summary to
+     * {@code out} and returns the highest exit status of any script.
+     */
+    int run(List<Path> scripts, PrintStream out) {
+        long start = System.nanoTime();
+        List<Future<Result>> futures = new ArrayList<>();
+        try (ExecutorService workers = Executors.newFixedThreadPool(jobs)) {
+            for (Path script : scripts) {
+                futures.add(workers.submit(() -> runScript(script)));
+            }
+
+            int status = 0;
+            int failed = 0;
+            for (Future<Result> future : futures) {
+                Result result = get(future);
+                out.printf("== %s (exit %d, %.1f ms)%n", result.script, result.status, result.nanos / 1e6);
+                out.print(result.out);
+                out.print(result.err);
+                if (result.status != 0) {
+                    failed++;
+                }
+                status = Math.max(status, result.status);
+            }
+            out.printf("%d scripts, %d failed, %.1f ms%n",
+                    scripts.size(), failed, (System.nanoTime() - start) / 1e6);
+            return status;
+        }
+    }
+
+    private Result runScript(Path script) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream outStream = new PrintStream(out, true);
+        PrintStream errStream = new PrintStream(err, true);
+        LoxEngine engine = new LoxEngine(cache, modulePath, lazyModules, concurrent, outStream, errStream);
+
+        long start = System.nanoTime();
+        int status = 0;
+        try {
+            String source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+            engine.compile(source, script.toString()).run(Map.of());
+        } catch (IOException e) {
+            errStream.println("Can't read " + script + ": " + e.getMessage());
+            status = 66;
+        } catch (CompileError error) {
+            status = 65;
+        } catch (RuntimeError error) {
+            Lox.runtimeError(engine, error);
+            status = 70;
+        } catch (StackOverflowError error) {
+            // unbounded recursion only fails its own script, the stack unwound and the batch goes on
+            errStream.println("Error: Stack overflow.");
+            status = 70;
+        } catch (RuntimeException e) {
+            errStream.println("Error: " + e);
+            status = 70;
+        }
+        return new Result(script, status, System.nanoTime() - start, out.toString(), err.toString());
+    }
+
+    private static Result get(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static class Result {
+        final Path script;
+        final int status;
+        final long nanos;
+        final String out;
+        final String err;
+
+        Result(Path script, int status, long nanos, String out, String err) {
+            this.script = script;
+            this.status = status;
+            this.nanos = nanos;
+            this.out = out;
+            this.err = err;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package interpreter.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What is left of the {@link Limits} of a run, kept by its interpreter.
+ * Spawned tasks and actors get a budget of their own for the call depth
+ * of their thread, but share the step count and the cancellation of the
+ * run that started them, so spawning can't get around the step limit. The
+ * time limit is enforced by the cancellation, which a timer cancels at the
+ * deadline.
+ */
+class Budget {
+    private final Limits limits;
+    private final Cancellation cancellation;
+    private final AtomicLong steps;
+    private int depth = 0;
+
+    Budget(Limits limits, Cancellation cancellation) {
+        this(limits, cancellation, new AtomicLong());
+    }
+
+    private Budget(Limits limits, Cancellation cancellation, AtomicLong steps) {
+        this.limits = limits;
+        this.cancellation = cancellation;
+        this.steps = steps;
+    }
+
+    Budget fork() {
+        return new Budget(limits, cancellation, steps);
+    }
+
+    /**
+     * Counts one loop iteration or call at {@code line}.
+     */
+    void step(int line) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw cancellation.error(line);
+        }
+        if (limits.maxSteps != 0 && steps.incrementAndGet() > limits.maxSteps) {
+            throw new ResourceLimitError(line, "Step limit of " + limits.maxSteps + " exceeded.");
+        }
+    }
+
+    void enterCall(int line) {
+        step(line);
+        depth++;
+        if (limits.maxCallDepth != 0 && depth > limits.maxCallDepth) {
+            depth--;
+            throw new ResourceLimitError(line, "Call depth limit of " + limits.maxCallDepth + " exceeded.");
+        }
+    }
+
+    void exitCall() {
+        depth--;
+    }
+
+    /**
+     * Checks the heap limit after an allocation at {@code line} found the
+     * run holding {@code bytes} of Lox objects.
+     */
+    void measured(long bytes, int line) {
+        if (limits.maxHeapBytes != 0 && bytes > limits.maxHeapBytes) {
+            throw new ResourceLimitError(line, "Heap limit of " + limits.maxHeapBytes + " bytes exceeded.");
+        }
+    }
+}
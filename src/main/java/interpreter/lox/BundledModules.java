@@ -0,0 +1,35 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Modules shipped on the class path, such as {@code math.lox}. They are
+ * imported by bare name when no module with that name is on the module
+ * path. They are compiled from source like any other module: they are
+ * small enough that reading a precompiled copy costs more at startup than
+ * scanning and parsing them.
+ */
+final class BundledModules {
+
+    private BundledModules() {
+    }
+
+    static boolean exists(String name) {
+        return !name.contains("/") && name.endsWith(".lox") && BundledModules.class.getResource("/" + name) != null;
+    }
+
+    /**
+     * Returns the source of the bundled module {@code name}, or null if
+     * there is none.
+     */
+    static String source(String name) throws IOException {
+        if (!exists(name)) {
+            return null;
+        }
+        try (InputStream in = BundledModules.class.getResourceAsStream("/" + name)) {
+            return in == null ? null : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package interpreter.lox;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation flag of one run, shared with the tasks and actors it spawns
+ * and checked at the same places as its {@link Limits}. A run without
+ * limits only starts checking it once it is cancelled, so it costs nothing
+ * until then. Cancelling also interrupts every thread running code of the
+ * run, so a wait in
+ * {@code sleep}, on a channel or in a join ends early. A run with a time
+ * limit is cancelled by a timer when it runs out, so a run stuck in such a
+ * wait still ends on time.
+ */
+class Cancellation {
+    private static final ScheduledThreadPoolExecutor TIMER = timer();
+
+    private volatile boolean cancelled = false;
+    // set before cancelling when the run ran out of time
+    private volatile Duration expired;
+    // threads running code of the run, with the interpreter each one runs it on
+    private final Map<Thread, Interpreter> threads = new HashMap<>();
+    private ScheduledFuture<?> deadline;
+
+    private static ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                runnable -> Thread.ofPlatform().daemon().name("lox-timeouts").unstarted(runnable));
+        // runs that finish in time take their timer with them
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Starts the run on the current thread with {@code interpreter},
+     * cancelling it after {@code timeout} unless that is null.
+     */
+    synchronized void start(Interpreter interpreter, Duration timeout) {
+        enter(interpreter);
+        if (timeout != null) {
+            deadline = TIMER.schedule(() -> expire(timeout), timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the error the run fails with at {@code line} once cancelled.
+     */
+    RuntimeError error(int line) {
+        Duration timeout = expired;
+        if (timeout != null) {
+            return new ResourceLimitError(line, "Time limit of " + timeout.toMillis() + " ms exceeded.");
+        }
+        return new CancelledError(line);
+    }
+
+    synchronized void cancel() {
+        cancelled = true;
+        for (Map.Entry<Thread, Interpreter> entry : threads.entrySet()) {
+            entry.getValue().cancelled();
+            entry.getKey().interrupt();
+        }
+    }
+
+    private synchronized void expire(Duration timeout) {
+        if (!cancelled) {
+            expired = timeout;
+            cancel();
+        }
+    }
+
+    /**
+     * Registers the current thread as running code of the run with
+     * {@code interpreter}, until {@link #exit()}.
+     */
+    synchronized void enter(Interpreter interpreter) {
+        threads.put(Thread.currentThread(), interpreter);
+        if (cancelled) {
+            interpreter.cancelled();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called by a thread when it stops running code of the run, so a late
+     * cancel no longer interrupts it and it goes on uninterrupted.
+     */
+    synchronized void exit() {
+        threads.remove(Thread.currentThread());
+        if (cancelled) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Called by the thread that started the run when it ends.
+     */
+    synchronized void finish() {
+        exit();
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+}
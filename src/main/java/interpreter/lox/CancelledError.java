@@ -0,0 +1,19 @@
+package interpreter.lox;
+
+/**
+ * Thrown out of a run that was cancelled with {@link Script#cancel()}.
+ * Like {@link ResourceLimitError} it unwinds the whole run.
+ */
+public class CancelledError extends RuntimeError {
+    private final int line;
+
+    public CancelledError(int line) {
+        super(null, "Run cancelled.");
+        this.line = line;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+}
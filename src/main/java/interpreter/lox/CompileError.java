@@ -0,0 +1,21 @@
+package interpreter.lox;
+
+import java.util.List;
+
+/**
+ * Thrown when a script or one of the modules it imports fails to scan,
+ * parse or resolve. The individual messages were already printed to the
+ * engine's error stream when they were found.
+ */
+public class CompileError extends RuntimeException {
+    private final List<String> errors;
+
+    public CompileError(List<String> errors) {
+        super(String.join(System.lineSeparator(), errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
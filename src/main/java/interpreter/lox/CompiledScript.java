@@ -0,0 +1,25 @@
+package interpreter.lox;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Output of the front end: the parsed statements together with the
+ * variable distances computed by the {@link Resolver}. Both are kept in
+ * one object so they are written out together, which keeps the identity
+ * based keys of {@code locals} pointing at the right nodes when read back.
+ * {@code imports} lists every module name imported anywhere in the script,
+ * which is enough to build the import graph without running it.
+ */
+public class CompiledScript implements Serializable {
+    final List<Stmt> statements;
+    final Map<Expr, Integer> locals;
+    final List<String> imports;
+
+    public CompiledScript(List<Stmt> statements, Map<Expr, Integer> locals, List<String> imports) {
+        this.statements = statements;
+        this.locals = locals;
+        this.imports = imports;
+    }
+}
@@ -0,0 +1,335 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records which statements ran and which way every branch went: both
+ * outcomes of each {@code if}, ternary, {@code and} and {@code or}. Each
+ * source file gets a bitset of executed lines and one of branch outcomes,
+ * numbered when the file is first seen, so recording is a bit lookup and
+ * nothing at all when coverage is off. Files are told apart by their
+ * compiled code, not their name, so scripts that share a name such as
+ * {@code <script>} are counted apart. Runs of the same file add up as long
+ * as it did not change in between.
+ */
+public class Coverage {
+    private final Map<CompiledScript, File> files = new IdentityHashMap<>();
+
+    Coverage() {
+    }
+
+    /**
+     * Returns the coverage of {@code script}, reported as {@code name},
+     * numbering its statements and branches the first time it is seen.
+     */
+    synchronized File file(String name, CompiledScript script) {
+        return files.computeIfAbsent(script, k -> new File(name, script.statements));
+    }
+
+    private List<File> sorted() {
+        List<File> sorted = new ArrayList<>(files.values());
+        sorted.sort(Comparator.comparing(file -> file.name));
+        return sorted;
+    }
+
+    /**
+     * Prints the lines and branches hit out of those found in every file.
+     */
+    public synchronized void report(PrintStream out) {
+        out.println("Coverage:");
+        for (File file : sorted()) {
+            synchronized (file) {
+                out.printf("  %-40s lines %5d/%-5d branches %5d/%d%n",
+                        file.name,
+                        file.executed.cardinality(),
+                        file.lines.cardinality(),
+                        file.taken.cardinality(),
+                        2 * file.branchLines.size());
+            }
+        }
+    }
+
+    /**
+     * Writes the coverage in the LCOV tracefile format read by genhtml and
+     * most coverage services.
+     */
+    public synchronized void writeLcov(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            for (File file : sorted()) {
+                synchronized (file) {
+                    writer.println("TN:");
+                    writer.println("SF:" + file.name);
+                    for (int i = 0; i < file.branchLines.size(); i++) {
+                        for (int outcome = 0; outcome < 2; outcome++) {
+                            writer.println("BRDA:" + file.branchLines.get(i) + "," + i + "," + outcome + ","
+                                    + (file.taken.get(2 * i + outcome) ? "1" : "0"));
+                        }
+                    }
+                    writer.println("BRF:" + 2 * file.branchLines.size());
+                    writer.println("BRH:" + file.taken.cardinality());
+                    for (int line = file.lines.nextSetBit(0); line >= 0; line = file.lines.nextSetBit(line + 1)) {
+                        writer.println("DA:" + line + "," + (file.executed.get(line) ? "1" : "0"));
+                    }
+                    writer.println("LF:" + file.lines.cardinality());
+                    writer.println("LH:" + file.executed.cardinality());
+                    writer.println("end_of_record");
+                }
+            }
+        }
+    }
+
+    /**
+     * Coverage of one source file. The bits are only ever set, a reader
+     * that misses a bit set by another thread takes the lock and sets it
+     * again.
+     */
+    static class File {
+        private final String name;
+        // lines holding a statement, and those that ran
+        private final BitSet lines = new BitSet();
+        private final BitSet executed;
+        // two bits per branch: taken when true, taken when false
+        private final Map<Object, Integer> branches = new IdentityHashMap<>();
+        private final List<Integer> branchLines = new ArrayList<>();
+        private final BitSet taken;
+
+        File(String name, List<Stmt> statements) {
+            this.name = name;
+            new Numbering().statements(statements);
+            // sized up front so setting a bit never grows the sets under a reader
+            executed = new BitSet(lines.length());
+            taken = new BitSet(2 * branchLines.size());
+        }
+
+        void executed(Stmt stmt) {
+            if (stmt.line != 0 && !executed.get(stmt.line)) {
+                synchronized (this) {
+                    executed.set(stmt.line);
+                }
+            }
+        }
+
+        void branch(Object node, boolean outcome) {
+            Integer index = branches.get(node);
+            if (index == null) {
+                return;
+            }
+            int bit = 2 * index + (outcome ? 0 : 1);
+            if (!taken.get(bit)) {
+                synchronized (this) {
+                    taken.set(bit);
+                }
+            }
+        }
+
+        /**
+         * Walks a file once to find its statement lines and number its
+         * branches in source order.
+         */
+        private class Numbering implements Stmt.Visitor<Void>, Expr.Visitor<Void> {
+            private int line = 0;
+
+            void statements(List<Stmt> statements) {
+                for (Stmt statement : statements) {
+                    statement(statement);
+                }
+            }
+
+            private void statement(Stmt stmt) {
+                if (stmt == null) {
+                    return;
+                }
+                int enclosing = line;
+                if (stmt.line != 0) {
+                    lines.set(stmt.line);
+                    line = stmt.line;
+                }
+                stmt.accept(this);
+                line = enclosing;
+            }
+
+            private void expression(Expr expr) {
+                if (expr != null) {
+                    expr.accept(this);
+                }
+            }
+
+            private void branch(Object node) {
+                branches.put(node, branchLines.size());
+                branchLines.add(line);
+            }
+
+            @Override
+            public Void visitClassStmt(Stmt.Class stmt) {
+                expression(stmt.superclass);
+                // methods are declared, not executed, only their bodies count
+                for (Stmt.Function method : stmt.methods) {
+                    expression(method.function);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitVarStmt(Stmt.Var stmt) {
+                expression(stmt.initializer);
+                return null;
+            }
+
+            @Override
+            public Void visitExpressionStmt(Stmt.Expression stmt) {
+                expression(stmt.expression);
+                return null;
+            }
+
+            @Override
+            public Void visitFunctionStmt(Stmt.Function stmt) {
+                expression(stmt.function);
+                return null;
+            }
+
+            @Override
+            public Void visitIfStmt(Stmt.If stmt) {
+                branch(stmt);
+                expression(stmt.condition);
+                statement(stmt.thenBranch);
+                statement(stmt.elseBranch);
+                return null;
+            }
+
+            @Override
+            public Void visitWhileStmt(Stmt.While stmt) {
+                expression(stmt.condition);
+                statement(stmt.body);
+                return null;
+            }
+
+            @Override
+            public Void visitPrintStmt(Stmt.Print stmt) {
+                expression(stmt.expression);
+                return null;
+            }
+
+            @Override
+            public Void visitBlockStmt(Stmt.Block stmt) {
+                statements(stmt.statements);
+                return null;
+            }
+
+            @Override
+            public Void visitReturnStmt(Stmt.Return stmt) {
+                expression(stmt.value);
+                return null;
+            }
+
+            @Override
+            public Void visitBreakStmt(Stmt.Break stmt) {
+                return null;
+            }
+
+            @Override
+            public Void visitImportStmt(Stmt.Import stmt) {
+                return null;
+            }
+
+            @Override
+            public Void visitAssignExpr(Expr.Assign expr) {
+                expression(expr.value);
+                return null;
+            }
+
+            @Override
+            public Void visitVariableExpr(Expr.Variable expr) {
+                return null;
+            }
+
+            @Override
+            public Void visitTernaryExpr(Expr.Ternary expr) {
+                branch(expr);
+                expression(expr.leftHand);
+                expression(expr.left);
+                expression(expr.right);
+                return null;
+            }
+
+            @Override
+            public Void visitLogicalExpr(Expr.Logical expr) {
+                branch(expr);
+                expression(expr.left);
+                expression(expr.right);
+                return null;
+            }
+
+            @Override
+            public Void visitSetExpr(Expr.Set expr) {
+                expression(expr.object);
+                expression(expr.value);
+                return null;
+            }
+
+            @Override
+            public Void visitSuperExpr(Expr.Super expr) {
+                return null;
+            }
+
+            @Override
+            public Void visitThisExpr(Expr.This expr) {
+                return null;
+            }
+
+            @Override
+            public Void visitBinaryExpr(Expr.Binary expr) {
+                expression(expr.left);
+                expression(expr.right);
+                return null;
+            }
+
+            @Override
+            public Void visitUnaryExpr(Expr.Unary expr) {
+                expression(expr.right);
+                return null;
+            }
+
+            @Override
+            public Void visitLiteralExpr(Expr.Literal expr) {
+                return null;
+            }
+
+            @Override
+            public Void visitCallExpr(Expr.Call expr) {
+                expression(expr.callee);
+                for (Expr argument : expr.arguments) {
+                    expression(argument);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitGetExpr(Expr.Get expr) {
+                expression(expr.object);
+                return null;
+            }
+
+            @Override
+            public Void visitGroupingExpr(Expr.Grouping expr) {
+                expression(expr.expression);
+                return null;
+            }
+
+            @Override
+            public Void visitAnFunctionExpr(Expr.AnFunction expr) {
+                statements(expr.body);
+                return null;
+            }
+        }
+    }
+}
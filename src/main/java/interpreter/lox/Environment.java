@@ -1,30 +1,49 @@
 package interpreter.lox;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-public class Environment {
+public class Environment implements Serializable {
+    // marks a name that is not defined, null is the value of nil
+    private static final Object UNDEFINED = new Object();
+
     private final Map<String, Object> values = new HashMap<>();
     public final Environment enclosing;
 
+    // only set in concurrent mode, where environments can be shared by several tasks
+    private transient Object lock;
+
     public Environment() {
-        enclosing = null;
+        this(false);
+    }
+
+    public Environment(boolean concurrent) {
+        this.enclosing = null;
+        this.lock = concurrent ? StripedLocks.of(this) : null;
+        LoxMetrics.environment();
     }
 
     public Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        this.lock = enclosing.lock == null ? null : StripedLocks.of(this);
+        LoxMetrics.environment();
     }
 
     public void define(String name, Object value) {
-        values.put(name, value);
+        write(name, value);
     }
 
     public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+        Object value = ancestor(distance).read(name);
+        return value == UNDEFINED ? null : value;
     }
 
     public void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+        ancestor(distance).write(name.lexeme, value);
     }
 
     private Environment ancestor(int distance) {
@@ -36,34 +55,88 @@ public class Environment {
     }
 
     public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            Object value = values.get(name.lexeme);
-            /*
-            if (value == null) {
-                throw new RuntimeError(name, "Variable not initialized '" + name.lexeme + "'.");
-            }*/
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            Object value = environment.read(name.lexeme);
+            if (value != UNDEFINED) {
+                return value;
+            }
+        }
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    public Object getOwn(Token name) {
+        Object value = read(name.lexeme);
+        if (value != UNDEFINED) {
             return value;
         }
-        if (enclosing != null) {
-            return enclosing.get(name);
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+
+    public void assign(Token name, Object value) {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            if (environment.replace(name.lexeme, value)) {
+                return;
+            }
         }
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
+    public Map<String, Object> getValues() {
+        if (lock == null) {
+            return new HashMap<>(values);
         }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        synchronized (lock) {
+            return new HashMap<>(values);
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
     public boolean variableExist(Token name) {
-        return values.containsKey(name.lexeme);
+        return read(name.lexeme) != UNDEFINED;
+    }
+
+    private Object read(String name) {
+        if (lock == null) {
+            return values.getOrDefault(name, UNDEFINED);
+        }
+        synchronized (lock) {
+            return values.getOrDefault(name, UNDEFINED);
+        }
+    }
+
+    private void write(String name, Object value) {
+        if (lock == null) {
+            values.put(name, value);
+            return;
+        }
+        synchronized (lock) {
+            values.put(name, value);
+        }
+    }
+
+    private boolean replace(String name, Object value) {
+        if (lock == null) {
+            return replaceUnlocked(name, value);
+        }
+        synchronized (lock) {
+            return replaceUnlocked(name, value);
+        }
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(lock != null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        lock = in.readBoolean() ? StripedLocks.of(this) : null;
+    }
+
+    private boolean replaceUnlocked(String name, Object value) {
+        if (!values.containsKey(name)) {
+            return false;
+        }
+        values.put(name, value);
+        return true;
+    }
 }
@@ -0,0 +1,48 @@
+package interpreter.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static interpreter.lox.TokenType.*;
+
+/**
+ * Collects the errors found while compiling one piece of source. Every
+ * message is printed as soon as it is reported and also kept, so the
+ * caller can decide whether compilation failed and hand the messages to
+ * whoever asked for the compilation.
+ */
+public class ErrorReporter {
+    private final PrintStream err;
+    private final List<String> errors = new ArrayList<>();
+
+    public ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    public boolean hadError() {
+        return !errors.isEmpty();
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    private void report(int line, String where, String message) {
+        String error = "[line " + line + "] Error" + where + ": " + message;
+        err.println(error);
+        errors.add(error);
+    }
+}
@@ -1,8 +1,9 @@
 package interpreter.lox;
 
+import java.io.Serializable;
 import java.util.List;
 
-abstract class Expr {
+abstract class Expr implements Serializable {
     interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitVariableExpr(Variable expr);
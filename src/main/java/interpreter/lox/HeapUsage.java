@@ -0,0 +1,200 @@
+package interpreter.lox;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Approximate Lox heap of one run: instances, fields, functions, strings
+ * and environments, sized like in {@link AllocationProfiler}. The
+ * interpreter never sees a Lox object die, so the usage is measured like a
+ * collector would: every so often the objects reachable from the
+ * environments of the run, the modules it loaded and the tasks and actors
+ * it has running are walked and sized. Between two walks, what the run
+ * allocates is added on top of the last one, so the usage never falls
+ * behind what the run holds by more than it allocated since.
+ *
+ * <p>Walks run on the threads of the run, once it allocated as much as the
+ * heap was at the last walk, or a megabyte, whichever is more. With a heap
+ * limit they come sooner, when the usage reaches the limit, but no more
+ * often than every eighth of it, so a run can get that far past the limit
+ * before failing. The usage can be read from any thread while the run is
+ * going.
+ */
+public class HeapUsage {
+    private static final long MIN_INTERVAL = 1 << 20;
+
+    private final AtomicLong allocated = new AtomicLong();
+    // allocated since the last walk
+    private final AtomicLong recent = new AtomicLong();
+    private volatile long live = 0;
+    private volatile long[] objects = new long[AllocationProfiler.Kind.values().length];
+    private volatile long interval = MIN_INTERVAL;
+    private long limit = 0;
+
+    // interpreters running code of the run, whose environments are roots
+    private final Set<Interpreter> interpreters = ConcurrentHashMap.newKeySet();
+
+    public HeapUsage() {
+    }
+
+    void limit(long maxBytes) {
+        this.limit = maxBytes;
+        this.interval = nextInterval(0);
+    }
+
+    void enter(Interpreter interpreter) {
+        interpreters.add(interpreter);
+    }
+
+    void exit(Interpreter interpreter) {
+        interpreters.remove(interpreter);
+    }
+
+    /**
+     * Counts one object and returns whether the heap is due to be measured.
+     */
+    boolean add(long size) {
+        allocated.addAndGet(size);
+        return recent.addAndGet(size) >= interval;
+    }
+
+    /**
+     * Returns the approximate bytes of Lox objects the run holds: what was
+     * reachable at the last walk plus what it allocated since.
+     */
+    public long getBytes() {
+        return live + recent.get();
+    }
+
+    /**
+     * Returns the bytes of every Lox object the run allocated so far, live
+     * or not.
+     */
+    public long getAllocatedBytes() {
+        return allocated.get();
+    }
+
+    /**
+     * Returns the number of objects reachable at the last walk, keyed by
+     * kind: instances, fields, functions, strings and environments.
+     */
+    public Map<String, Long> getObjects() {
+        long[] counts = objects;
+        Map<String, Long> objects = new LinkedHashMap<>();
+        for (AllocationProfiler.Kind kind : AllocationProfiler.Kind.values()) {
+            objects.put(kind.label, counts[kind.ordinal()]);
+        }
+        return objects;
+    }
+
+    /**
+     * Walks the objects reachable from the run and returns their size.
+     */
+    synchronized long measure() {
+        long since = recent.get();
+        Walk walk = new Walk();
+        for (Interpreter interpreter : interpreters) {
+            for (Environment environment : interpreter.getFrames()) {
+                walk.add(environment);
+            }
+            for (LoxModule module : interpreter.getModules().getModules().values()) {
+                walk.add(module);
+            }
+        }
+        walk.run();
+        live = walk.bytes;
+        objects = walk.counts;
+        recent.addAndGet(-since);
+        interval = nextInterval(walk.bytes);
+        return walk.bytes;
+    }
+
+    private long nextInterval(long live) {
+        if (limit == 0) {
+            return Math.max(live, MIN_INTERVAL);
+        }
+        return Math.max(limit - live, limit / 8);
+    }
+
+    @Override
+    public String toString() {
+        return "about " + getBytes() + " bytes in " + getObjects();
+    }
+
+    private static class Walk {
+        private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Deque<Object> pending = new ArrayDeque<>();
+        private final long[] counts = new long[AllocationProfiler.Kind.values().length];
+        private long bytes = 0;
+
+        void add(Object value) {
+            if (value != null && !(value instanceof Double) && !(value instanceof Boolean) && seen.add(value)) {
+                pending.push(value);
+            }
+        }
+
+        void run() {
+            while (!pending.isEmpty()) {
+                visit(pending.pop());
+            }
+        }
+
+        private void visit(Object value) {
+            try {
+                if (value instanceof String string) {
+                    count(AllocationProfiler.Kind.STRING, AllocationProfiler.stringBytes(string.length()));
+                } else if (value instanceof Environment environment) {
+                    count(AllocationProfiler.Kind.ENVIRONMENT, AllocationProfiler.Kind.ENVIRONMENT.bytes);
+                    for (Object variable : environment.getValues().values()) {
+                        add(variable);
+                    }
+                    add(environment.enclosing);
+                } else if (value instanceof LoxFunction function) {
+                    count(AllocationProfiler.Kind.FUNCTION, AllocationProfiler.Kind.FUNCTION.bytes);
+                    add(function.getClosure());
+                } else if (value instanceof LoxClass klass) {
+                    count(AllocationProfiler.Kind.INSTANCE, AllocationProfiler.Kind.INSTANCE.bytes);
+                    for (LoxFunction method : klass.getMethods()) {
+                        add(method);
+                    }
+                    add(klass.getSuperClass());
+                    add(klass.getKlass());
+                } else if (value instanceof LoxInstance instance) {
+                    count(AllocationProfiler.Kind.INSTANCE, AllocationProfiler.Kind.INSTANCE.bytes);
+                    for (Object field : instance.getFields().values()) {
+                        count(AllocationProfiler.Kind.FIELD, AllocationProfiler.Kind.FIELD.bytes);
+                        add(field);
+                    }
+                    add(instance.getKlass());
+                } else if (value instanceof LoxModule module) {
+                    add(module.environment);
+                } else if (value instanceof LoxActor actor) {
+                    add(actor.getInstance());
+                } else if (value instanceof LoxTask task) {
+                    add(task.getResult());
+                } else if (value instanceof LoxChannel channel) {
+                    List<Object> buffered = channel.getBuffered();
+                    for (Object item : buffered) {
+                        add(item);
+                    }
+                }
+            } catch (ConcurrentModificationException e) {
+                // an actor changed its unlocked fields under the walk, it is counted without them
+            }
+        }
+
+        private void count(AllocationProfiler.Kind kind, long size) {
+            counts[kind.ordinal()]++;
+            bytes += size;
+        }
+    }
+}
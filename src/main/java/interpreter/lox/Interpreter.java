@@ -1,5 +1,7 @@
 package interpreter.lox;
 
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -8,16 +10,85 @@ import java.util.Scanner;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
-    final Environment globals = new Environment();
+    private final PrintStream out;
 
-    private Environment environment = globals;
+    private final ModuleRegistry modules;
 
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    private final Environment natives;
+
+    private LoxModule module;
+
+    private Environment globals;
+
+    private Environment environment;
+
+    private Map<Expr, Integer> locals;
 
     private boolean stopLoop = false;
 
-    public Interpreter() {
-        globals.define("clock", new LoxCallable() {
+    private boolean promptMode = false;
+
+    private final boolean concurrent;
+
+    // only set while profiling
+    private final Profiler profiler;
+    private final ShadowStack stack;
+
+    // only set while profiling allocations, with the line of the statement running
+    private final AllocationProfiler allocations;
+    private int line = 0;
+
+    private final Statistics statistics;
+
+    // only set when the run has limits or once it is cancelled, so runs without
+    // either check nothing at each loop iteration and call
+    private volatile Budget budget;
+    // cancels the run, shared with the tasks it spawns
+    private Cancellation cancellation;
+
+    // only set when the run measures its heap, shared with the tasks it spawns
+    private HeapUsage heap;
+    // with it, the environments entered and not left yet, which are roots of the heap
+    private List<Environment> frames;
+
+    /**
+     * Interpreter for another thread: it shares the natives, modules and
+     * globals of {@code parent} but has its own position in the program.
+     */
+    private Interpreter(Interpreter parent) {
+        this.out = parent.out;
+        this.modules = parent.modules;
+        this.natives = parent.natives;
+        this.concurrent = parent.concurrent;
+        this.profiler = parent.profiler;
+        this.allocations = parent.allocations;
+        this.statistics = parent.statistics;
+        this.cancellation = parent.cancellation;
+        Budget budget = parent.budget;
+        this.budget = budget == null ? null : budget.fork();
+        this.heap = parent.heap;
+        this.frames = heap == null ? null : new ArrayList<>();
+        this.stack = profiler == null ? null : profiler.newStack();
+        enter(parent.module);
+        this.environment = globals;
+    }
+
+    public Interpreter(LoxEngine engine) {
+        this.out = engine.out;
+        this.modules = new ModuleRegistry(engine);
+        this.concurrent = engine.isConcurrent();
+        this.profiler = engine.getProfiler();
+        this.allocations = engine.getAllocationProfiler();
+        this.statistics = engine.getStatistics();
+        this.stack = profiler == null ? null : profiler.newStack();
+        if (stack != null) {
+            stack.push("<script>", 1);
+        }
+        this.natives = new Environment(concurrent);
+        enter(new LoxModule("main", null, natives));
+        this.environment = globals;
+
+        natives.define("clock", new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -34,7 +105,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         });
 
-        globals.define("read", new LoxCallable() {
+        natives.define("read", new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -52,7 +123,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         });
 
-        globals.define("readNumber", new LoxCallable() {
+        natives.define("readNumber", new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -75,27 +146,285 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return "<native fn>";
             }
         });
+
+        defineConcurrencyNatives();
+    }
+
+    private void defineConcurrencyNatives() {
+        natives.define("spawn", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!interpreter.concurrent) {
+                    throw new RuntimeError(null, "spawn needs concurrent mode (--concurrent).");
+                }
+                if (!(arguments.get(0) instanceof LoxCallable function) || function.arity() != 0) {
+                    throw new RuntimeError(null, "Can only spawn functions without parameters.");
+                }
+                return LoxTask.start(interpreter.fork(), function);
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+
+        natives.define("actor", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!interpreter.concurrent) {
+                    throw new RuntimeError(null, "actor needs concurrent mode (--concurrent).");
+                }
+                if (!(arguments.get(0) instanceof LoxClass klass)) {
+                    throw new RuntimeError(null, "Can only make actors of classes.");
+                }
+                return LoxActor.classOf(klass);
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+
+        natives.define("Channel", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof Double capacity) || capacity < 1) {
+                    throw new RuntimeError(null, "Channel capacity must be a positive number.");
+                }
+                return new LoxChannel(capacity.intValue());
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+
+        natives.define("compareAndSet", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 4;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof LoxInstance instance)
+                    || !(arguments.get(1) instanceof String field)) {
+                    throw new RuntimeError(null, "Expect an instance and a field name.");
+                }
+                return instance.compareAndSet(field, arguments.get(2), arguments.get(3));
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+
+        natives.define("getAndAdd", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 3;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof LoxInstance instance)
+                    || !(arguments.get(1) instanceof String field)
+                    || !(arguments.get(2) instanceof Double delta)) {
+                    throw new RuntimeError(null, "Expect an instance, a field name and a number.");
+                }
+                return instance.getAndAdd(field, delta);
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+
+        natives.define("sleep", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof Double millis)) {
+                    throw new RuntimeError(null, "Sleep time must be a number of milliseconds.");
+                }
+                try {
+                    Thread.sleep(millis.longValue());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeError(null, "Interrupted while sleeping.");
+                }
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+    }
+
+    Interpreter fork() {
+        return new Interpreter(this);
     }
 
     public void interpret(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            execute(statement);
+        }
+    }
+
+    public void define(String name, Object value) {
+        if (value instanceof Number number) {
+            value = number.doubleValue();
+        }
+        globals.define(name, value);
+    }
+
+    public Map<String, Object> getGlobals() {
+        return globals.getValues();
+    }
+
+    void setPromptMode(boolean promptMode) {
+        this.promptMode = promptMode;
+    }
+
+    void setLimits(Limits limits, HeapUsage heap, Cancellation cancellation) {
+        this.cancellation = cancellation;
+        this.budget = limits.isNone() ? null : new Budget(limits, cancellation);
+        this.heap = heap;
+        this.frames = heap == null ? null : new ArrayList<>();
+    }
+
+    Budget getBudget() {
+        return budget;
+    }
+
+    Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Called by the cancellation of the run on one of its interpreters, so
+     * one without limits starts checking it at every loop iteration and call.
+     */
+    void cancelled() {
+        if (budget == null) {
+            budget = new Budget(Limits.NONE, cancellation);
+        }
+    }
+
+    HeapUsage getHeap() {
+        return heap;
+    }
+
+    /**
+     * Returns the environments this interpreter can reach variables
+     * through, to measure the heap from. May be called from other threads.
+     */
+    List<Environment> getFrames() {
+        List<Environment> roots = new ArrayList<>();
+        roots.add(globals);
+        roots.add(environment);
+        synchronized (frames) {
+            roots.addAll(frames);
+        }
+        return roots;
+    }
+
+    public void interpretModule(LoxModule module, List<Stmt> statements) {
+        if (stack != null) {
+            stack.push(module.toString(), 1);
+        }
+        long start = System.nanoTime();
         try {
-            for (Stmt statement : statements) {
-                execute(statement);
+            // modules always run at their own top level, even when imported inside a block
+            executeBlock(statements, module.environment, module);
+        } finally {
+            if (statistics != null) {
+                statistics.executed(module.name, System.nanoTime() - start);
+            }
+            if (stack != null) {
+                stack.pop();
             }
-        } catch (RuntimeError error) {
-            Lox.runtimeError(error);
         }
     }
 
-    public List<Object> interpretModule(List<Stmt> statements) {
-        try {
-            for (Stmt statement : statements) {
-                execute(statement);
+    void allocated(AllocationProfiler.Kind kind) {
+        allocated(kind, kind.bytes);
+    }
+
+    void allocated(AllocationProfiler.Kind kind, long bytes) {
+        if (allocations != null) {
+            allocations.record(module.label, line, kind, bytes);
+        }
+        if (heap != null && heap.add(bytes)) {
+            long live = heap.measure();
+            Budget budget = this.budget;
+            if (budget != null) {
+                budget.measured(live, line);
             }
-        } catch (RuntimeError error) {
-            Lox.runtimeError(error);
         }
-        return List.of(globals, locals);
+    }
+
+    private boolean countsAllocations() {
+        return allocations != null || heap != null;
+    }
+
+    Statistics getStatistics() {
+        return statistics;
+    }
+
+    ShadowStack getStack() {
+        return stack;
+    }
+
+    Environment getNatives() {
+        return natives;
+    }
+
+    ModuleRegistry getModules() {
+        return modules;
+    }
+
+    LoxModule getModule() {
+        return module;
+    }
+
+    /**
+     * Makes {@code main} the top level of this interpreter, replacing the
+     * one it was created with.
+     */
+    void restore(LoxModule main) {
+        enter(main);
+        this.environment = globals;
+    }
+
+    public LoxModule newModule(String name, Path path) {
+        return new LoxModule(name, path, natives);
     }
 
 
@@ -131,7 +460,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     return (double) left + (double) right;
                 }
                 if (left instanceof String || right instanceof String) {
-                    return  left.toString() +  right.toString();
+                    String result = left.toString() + right.toString();
+                    if (countsAllocations()) {
+                        allocated(AllocationProfiler.Kind.STRING, AllocationProfiler.stringBytes(result.length()));
+                    }
+                    return result;
                 }
                 throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
             case STAR:
@@ -153,8 +486,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitTernaryExpr(Expr.Ternary expr) {
-        Object leftHand = evaluate(expr.leftHand);
-        if (isTruthy(leftHand)) {
+        boolean condition = isTruthy(evaluate(expr.leftHand));
+        if (module.coverage != null) {
+            module.coverage.branch(expr, condition);
+        }
+        if (condition) {
             return evaluate(expr.left);
         }
         return evaluate(expr.right);
@@ -163,6 +499,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
         Object left = evaluate(expr.left);
+        if (module.coverage != null) {
+            module.coverage.branch(expr, isTruthy(left));
+        }
 
         if (expr.operator.type == TokenType.OR) {
             if (isTruthy(left)) {
@@ -185,6 +524,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
+        if (countsAllocations() && !((LoxInstance) object).hasField(expr.name.lexeme)) {
+            allocated(AllocationProfiler.Kind.FIELD);
+        }
         ((LoxInstance)object).set(expr.name, value);
         return value;
     }
@@ -199,6 +541,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (method == null) {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
         }
+        allocated(AllocationProfiler.Kind.FUNCTION);
+        allocated(AllocationProfiler.Kind.ENVIRONMENT);
         return method.bind(object);
     }
 
@@ -214,7 +558,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitAnFunctionExpr(Expr.AnFunction expr) {
-        return new LoxFunction(null, null, expr,environment, false);
+        allocated(AllocationProfiler.Kind.FUNCTION);
+        return new LoxFunction(null, null, expr, environment, module, false);
     }
 
     @Override
@@ -239,11 +584,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
         }
 
+        LoxMetrics.call();
+        // the callee moves the line, allocations after the call belong to this one
+        int caller = line;
         Object result;
         try {
             result = function.call(this, arguments);
+        } catch (ResourceLimitError | CancelledError e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeError(expr.paren, e.getMessage());
+        } finally {
+            line = caller;
         }
         return result;
     }
@@ -252,8 +604,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
 
-        if (object instanceof LoxModule mod) {
-            return mod.get(expr.name);
+        if (object instanceof LoxObject loxObject) {
+            return loxObject.get(this, expr.name);
         }
 
         if (object instanceof LoxClass klass) {
@@ -261,6 +613,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         if (object instanceof LoxInstance instance) {
+            if (countsAllocations() && !instance.hasField(expr.name.lexeme)) {
+                // a method, bound to the instance on every access
+                allocated(AllocationProfiler.Kind.FUNCTION);
+                allocated(AllocationProfiler.Kind.ENVIRONMENT);
+            }
             return instance.get(expr.name);
         }
         throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -290,19 +647,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
         Object result = evaluate(stmt.expression);
-        if (Lox.promptmode) {
-            System.out.println(result);
+        if (promptMode) {
+            out.println(result);
         }
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
+        allocated(AllocationProfiler.Kind.FUNCTION);
         LoxFunction function = new LoxFunction(
                 stmt.name.lexeme,
                 stmt.kind,
                 (Expr.AnFunction)stmt.function,
                 environment,
+                module,
                 false);
 
         if (stmt.name.lexeme != null) {
@@ -313,6 +672,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        allocated(AllocationProfiler.Kind.ENVIRONMENT);
         executeBlock(stmt.statements, new Environment(environment));
         return null;
     }
@@ -334,16 +694,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitImportStmt(Stmt.Import stmt) {
-        String name = (stmt.alias == null) ?
-                stmt.name.lexeme.substring(1,stmt.name.lexeme.lastIndexOf('.'))
-                : stmt.alias.lexeme;
-        environment.define(name, new LoxModule(stmt.name));
+        environment.define(LoxModule.bindingName(stmt), modules.load(this, stmt.name));
         return null;
     }
 
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
+        boolean condition = isTruthy(evaluate(stmt.condition));
+        if (module.coverage != null) {
+            module.coverage.branch(stmt, condition);
+        }
+        if (condition) {
             execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
             execute(stmt.elseBranch);
@@ -358,6 +719,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             if (stopLoop) {
                 break;
             }
+            Budget budget = this.budget;
+            if (budget != null) {
+                budget.step(stmt.line);
+            }
         }
         stopLoop = false;
         return null;
@@ -366,7 +731,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        out.println(stringify(value));
         return null;
     }
 
@@ -390,11 +755,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         Map<String, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
+            allocated(AllocationProfiler.Kind.FUNCTION);
             LoxFunction function = new LoxFunction(
                         method.name.lexeme,
                         method.kind,
                         (Expr.AnFunction) method.function,
                         environment,
+                        module,
                         method.name.lexeme.equals("init")
             );
             if (methods.containsKey(method.name.lexeme)) {
@@ -403,7 +770,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             methods.put(method.name.lexeme, function);
         }
 
-        LoxClass klass = new LoxClass(stmt.name.lexeme,(LoxClass) superClass, methods);
+        LoxClass klass = new LoxClass(stmt.name.lexeme,(LoxClass) superClass, methods, concurrent);
 
         if (superClass != null) {
             environment = environment.enclosing;
@@ -441,11 +808,45 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     private void execute(Stmt stmt) {
+        if (stack != null && stmt.line != 0) {
+            stack.line(stmt.line);
+        }
+        if (countsAllocations() && stmt.line != 0) {
+            line = stmt.line;
+        }
+        if (module.coverage != null) {
+            module.coverage.executed(stmt);
+        }
         stmt.accept(this);
     }
 
+    public void executeBlock(List<Stmt> statements, Environment environment, LoxModule module) {
+        if (module == this.module) {
+            executeBlock(statements, environment);
+            return;
+        }
+        LoxModule previous = this.module;
+        try {
+            enter(module);
+            executeBlock(statements, environment);
+        } finally {
+            enter(previous);
+        }
+    }
+
+    private void enter(LoxModule module) {
+        this.module = module;
+        this.globals = module.environment;
+        this.locals = module.locals;
+    }
+
     public void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
+        if (frames != null) {
+            synchronized (frames) {
+                frames.add(environment);
+            }
+        }
         try {
             this.environment = environment;
             for (Stmt statement : statements) {
@@ -456,6 +857,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         } finally {
             this.environment = previous;
+            if (frames != null) {
+                synchronized (frames) {
+                    frames.remove(frames.size() - 1);
+                }
+            }
         }
     }
 
@@ -463,8 +869,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.accept(this);
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    public void resolve(Map<Expr, Integer> resolved) {
+        module.addLocals(resolved);
+        locals = module.locals;
     }
 
     private Object lookUpVariable(Token name, Expr expr) {
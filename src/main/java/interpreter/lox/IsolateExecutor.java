@@ -0,0 +1,76 @@
+package interpreter.lox;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs scripts as isolates on virtual threads. An isolate is one run of a
+ * {@link Script}: it gets its own interpreter, globals, modules and heap
+ * objects, while the compiled code is shared by every isolate running the
+ * same script. Isolates never see each other's objects, so they need no
+ * locking and spread over all cores.
+ */
+public class IsolateExecutor implements AutoCloseable {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore running;
+
+    /**
+     * Creates an executor that starts every submitted isolate right away.
+     */
+    public IsolateExecutor() {
+        this.running = null;
+    }
+
+    /**
+     * Creates an executor that runs at most {@code maxRunning} isolates at
+     * the same time, the others wait for a free slot before starting.
+     */
+    public IsolateExecutor(int maxRunning) {
+        this.running = new Semaphore(maxRunning);
+    }
+
+    /**
+     * Runs {@code script} in a new isolate with {@code inputs} as globals.
+     * The future completes with the top level variables of the script, or
+     * exceptionally with the {@link RuntimeError} that stopped it.
+     */
+    public CompletableFuture<Map<String, Object>> submit(Script script, Map<String, Object> inputs) {
+        return submit(script, inputs, Limits.NONE);
+    }
+
+    /**
+     * Runs {@code script} like {@link #submit(Script, Map)} within
+     * {@code limits}. The time limit starts when the isolate starts, not
+     * while it waits for a free slot.
+     */
+    public CompletableFuture<Map<String, Object>> submit(Script script, Map<String, Object> inputs, Limits limits) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (running == null) {
+                return script.run(inputs, limits);
+            }
+            try {
+                running.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return script.run(inputs, limits);
+            } finally {
+                running.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for the submitted isolates to finish and stops the executor.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,48 @@
+package interpreter.lox;
+
+import java.time.Duration;
+
+/**
+ * Bounds on one run of a script, for running code that is not trusted. A
+ * run that goes past any of them fails with a {@link ResourceLimitError}.
+ * Step and depth limits are checked at every loop iteration and function
+ * call, which is where a script can spend unbounded time, the heap limit
+ * whenever {@link HeapUsage} measures the heap. The time limit is enforced
+ * by a timer that cancels the run, so it also ends waits in {@code sleep},
+ * on channels and in joins.
+ */
+public class Limits {
+    public static final Limits NONE = new Limits(0, null, 0);
+
+    final long maxSteps;
+    final Duration timeout;
+    final int maxCallDepth;
+    final long maxHeapBytes;
+
+    /**
+     * @param maxSteps     loop iterations plus function calls, 0 for no limit
+     * @param timeout      wall clock time from the start of the run, null for no limit
+     * @param maxCallDepth nested function calls, 0 for no limit
+     */
+    public Limits(long maxSteps, Duration timeout, int maxCallDepth) {
+        this(maxSteps, timeout, maxCallDepth, 0);
+    }
+
+    /**
+     * @param maxHeapBytes bytes of Lox objects the run may hold, as measured
+     *                     by {@link HeapUsage}, 0 for no limit
+     */
+    public Limits(long maxSteps, Duration timeout, int maxCallDepth, long maxHeapBytes) {
+        if (maxSteps < 0 || maxCallDepth < 0 || maxHeapBytes < 0 || (timeout != null && timeout.isNegative())) {
+            throw new IllegalArgumentException("Limits can't be negative.");
+        }
+        this.maxSteps = maxSteps;
+        this.timeout = timeout;
+        this.maxCallDepth = maxCallDepth;
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    boolean isNone() {
+        return maxSteps == 0 && timeout == null && maxCallDepth == 0 && maxHeapBytes == 0;
+    }
+}
@@ -6,143 +6,316 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
-import static interpreter.lox.TokenType.*;
-
+/**
+ * Command line front end. All interpreter state lives in a {@link LoxEngine}
+ * and the interpreters it creates, this class only parses the arguments,
+ * reports errors and picks the exit status.
+ */
 public class Lox {
+    private static final String PROFILE_FILE = "lox-profile.collapsed";
+    private static final String COVERAGE_FILE = "lox-coverage.info";
 
-    private static final Interpreter interpreter = new Interpreter();
+    public static void main(String[] args) throws IOException {
+        boolean useCache = true;
+        String modulePath = null;
+        boolean precompile = false;
+        boolean lazyModules = false;
+        boolean concurrent = false;
+        boolean batch = false;
+        boolean server = false;
+        boolean client = false;
+        String socket = null;
+        String snapshot = null;
+        String resume = null;
+        boolean profile = false;
+        boolean allocProfile = false;
+        boolean stats = false;
+        boolean coverage = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            switch (args[first]) {
+                case "--no-cache" -> useCache = false;
+                case "--precompile" -> precompile = true;
+                case "--lazy-modules" -> lazyModules = true;
+                case "--concurrent" -> concurrent = true;
+                case "--batch" -> batch = true;
+                case "--profile" -> profile = true;
+                case "--alloc-profile" -> allocProfile = true;
+                case "--stats" -> stats = true;
+                case "--coverage" -> coverage = true;
+                case "--server" -> server = true;
+                case "--client" -> client = true;
+                case "--snapshot" -> {
+                    if (++first == args.length) {
+                        usage();
+                    }
+                    snapshot = args[first];
+                }
+                case "--resume" -> {
+                    if (++first == args.length) {
+                        usage();
+                    }
+                    resume = args[first];
+                }
+                case "--socket" -> {
+                    if (++first == args.length) {
+                        usage();
+                    }
+                    socket = args[first];
+                }
+                case "--jobs" -> {
+                    if (++first == args.length) {
+                        usage();
+                    }
+                    jobs = parseJobs(args[first]);
+                }
+                case "--module-path" -> {
+                    if (++first == args.length) {
+                        usage();
+                    }
+                    modulePath = args[first];
+                }
+                default -> usage();
+            }
+        }
+        String[] rest = Arrays.copyOfRange(args, first, args.length);
+        ScriptCache cache = useCache ? ScriptCache.fromEnvironment() : null;
+        if (client) {
+            if (rest.length == 0) {
+                usage();
+            }
+            Path path = LoxServer.socketFromEnvironment(socket);
+            try {
+                System.exit(LoxClient.run(path, rest[0], List.of(rest).subList(1, rest.length)));
+            } catch (IOException e) {
+                System.err.println("Can't reach the server at " + path + ": " + e.getMessage());
+                System.exit(69);
+            }
+        }
+        if (batch) {
+            if (rest.length == 0 || precompile) {
+                usage();
+            }
+            BatchRunner runner = new BatchRunner(cache,
+                    ModulePath.fromEnvironment(modulePath),
+                    lazyModules,
+                    concurrent,
+                    jobs);
+            System.exit(runner.run(BatchRunner.scripts(rest), System.out));
+        }
 
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
-    static boolean promptmode = false;
+        LoxEngine engine = new LoxEngine(cache,
+                ModulePath.fromEnvironment(modulePath),
+                lazyModules,
+                concurrent,
+                System.out,
+                System.err);
 
-    public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        if (server) {
+            if (rest.length != 0) {
+                usage();
+            }
+            Path path = LoxServer.socketFromEnvironment(socket);
+            try {
+                new LoxServer(engine, modulePath, path).serve();
+            } catch (IOException e) {
+                System.err.println("Can't listen on " + path + ": " + e.getMessage());
+                System.exit(69);
+            }
+        } else if (snapshot != null) {
+            if (rest.length != 1 || resume != null) {
+                usage();
+            }
+            snapshot(engine, rest[0], Paths.get(snapshot));
+        } else if (precompile) {
+            if (rest.length == 0 || cache == null) {
+                usage();
+            }
+            precompile(engine, rest);
+        } else if (rest.length >= 1) {
+            Statistics statistics = stats ? engine.startStatistics() : null;
+            Coverage covered = coverage ? engine.startCoverage() : null;
+            Profiler profiler = profile ? engine.startProfiler() : null;
+            AllocationProfiler allocations = allocProfile ? engine.startAllocationProfiler() : null;
+            int status = runFile(engine, rest[0], List.of(rest).subList(1, rest.length), resume);
+            if (profiler != null) {
+                report(profiler);
+            }
+            if (allocations != null) {
+                allocations.report(System.err);
+            }
+            if (statistics != null) {
+                statistics.report(System.err);
+            }
+            if (covered != null) {
+                report(covered);
+            }
+            if (status != 0) {
+                System.exit(status);
+            }
         } else {
-            runPrompt();
+            runPrompt(engine);
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()), false);
-        if (hadError) {
+    private static void usage() {
+        System.out.println("Usage: jlox [--no-cache] [--module-path path] [--lazy-modules] [--concurrent]");
+        System.out.println("                 [--profile] [--alloc-profile] [--stats] [--coverage]");
+        System.out.println("                 [script [args...]]");
+        System.out.println("       jlox --precompile script...");
+        System.out.println("       jlox --snapshot file init-script");
+        System.out.println("       jlox --resume file script [args...]");
+        System.out.println("       jlox --batch [--jobs n] script|directory...");
+        System.out.println("       jlox --server [--socket path]");
+        System.out.println("       jlox --client [--socket path] script [args...]");
+        System.exit(64);
+    }
+
+    private static int parseJobs(String jobs) {
+        try {
+            int value = Integer.parseInt(jobs);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // falls through to usage
+        }
+        usage();
+        return 0;
+    }
+
+    private static void precompile(LoxEngine engine, String[] paths) throws IOException {
+        boolean failed = false;
+        for (String path : paths) {
+            try {
+                engine.compile(readFile(path));
+            } catch (CompileError error) {
+                failed = true;
+            }
+        }
+        if (failed) {
             System.exit(65);
         }
-        if (hadRuntimeError) {
+    }
+
+    private static void snapshot(LoxEngine engine, String path, Path file) throws IOException {
+        Script script;
+        try {
+            script = engine.compile(readFile(path), path);
+        } catch (CompileError error) {
+            System.exit(65);
+            return;
+        }
+        try {
+            Snapshot.create(script, file);
+        } catch (RuntimeError error) {
+            runtimeError(engine, error);
             System.exit(70);
+        } catch (IOException e) {
+            System.err.println("Can't write snapshot: " + e.getMessage());
+            System.exit(74);
         }
     }
 
-    public static List<Object> runModuleFile(String path) throws IOException {
-        var find = Files.find(Paths.get("").toAbsolutePath(),
-                100,
-                (p, f) -> {
-                    if (p.getFileName() == null) {
-                        return false;
-                    }
-                    if (p.toString().contains("target")) {
-                        return false;
-                    }
-                    return p.getFileName().toString().equals(path);
-                })
-                .toList();
-
+    private static void report(Profiler profiler) throws IOException {
+        profiler.stop();
+        profiler.report(System.err);
+        Path collapsed = Paths.get(PROFILE_FILE);
+        profiler.writeCollapsed(collapsed);
+        System.err.println();
+        System.err.println("Collapsed stacks written to " + collapsed.toAbsolutePath());
+    }
 
+    private static void report(Coverage coverage) throws IOException {
+        coverage.report(System.err);
+        Path lcov = Paths.get(COVERAGE_FILE);
+        coverage.writeLcov(lcov);
+        System.err.println();
+        System.err.println("LCOV coverage written to " + lcov.toAbsolutePath());
+    }
 
-        if (find.isEmpty()) {
-            throw new IOException("Can't find '" + path + "'.");
-        } else if (find.size() > 1) {
-            throw new IOException(find.size() + " modules named '"+ path + "' found.");
+    private static int runFile(LoxEngine engine, String path, List<String> args, String resume) throws IOException {
+        Script script;
+        try {
+            script = engine.compile(readFile(path), path);
+        } catch (CompileError error) {
+            return 65;
         }
-        byte[] bytes = Files.readAllBytes(find.getFirst());
-        var mod = run(new String(bytes, Charset.defaultCharset()), true);
-        if (hadError) {
-            System.exit(65);
-        }
-        if (hadRuntimeError) {
-            System.exit(70);
+        try {
+            if (resume == null) {
+                script.run(arguments(args));
+            } else {
+                Snapshot.resume(Paths.get(resume), script, arguments(args));
+            }
+        } catch (RuntimeError error) {
+            runtimeError(engine, error);
+            return 70;
+        } catch (IOException e) {
+            System.err.println("Can't resume: " + e.getMessage());
+            return 66;
         }
-        return mod;
+        return 0;
     }
 
-    private static void runPrompt() throws IOException {
-        promptmode = true;
+    private static void runPrompt(LoxEngine engine) throws IOException {
+        Interpreter interpreter = new Interpreter(engine);
+        interpreter.setPromptMode(true);
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
         for (;;) {
             System.out.print(">>");
             String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
             if (line.equals("exit")) {
                 System.out.println("Chau puto");
                 System.exit(0);
             }
-            if (line == null) {
-                break;
+            boolean failed = false;
+            try {
+                engine.compile(line, "<prompt>", false).run(interpreter);
+            } catch (CompileError error) {
+                failed = true;
+            } catch (RuntimeError error) {
+                runtimeError(engine, error);
+                failed = true;
             }
-            run(line, false);
-            if (hadError || hadRuntimeError) {
+            if (failed) {
                 try {
                     Thread.sleep(500l);
                 } catch (InterruptedException e) {
                     System.out.println(e.getMessage());
                 }
             }
-            hadError = false;
-            hadRuntimeError = false;
         }
     }
 
-    private static List<Object> run(String source, boolean mod) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-
-        if (hadError) {
-            return null;
-        }
-
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        resolver.endScope();
-
-        if (hadError) {
-            return null;
-        }
-
-        if (mod) {
-            return interpreter.interpretModule(statements);
-        }
-        interpreter.interpret(statements);
-        return null;
-    }
-
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    static void error(Token token, String message) {
-        if (token.type == EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
-        }
+    private static String readFile(String path) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        return new String(bytes, Charset.defaultCharset());
     }
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println("[line " + error.token.line + "] Error: " + error.getMessage());
-        hadRuntimeError = true;
+    /**
+     * Binds the command line arguments of a script: {@code arg(i)} returns
+     * the i-th argument as a string, or nil past the last one.
+     */
+    static Map<String, Object> arguments(List<String> args) {
+        return Map.of("arg", new NativeMethod("arg", 1, (interpreter, arguments) -> {
+            if (!(arguments.get(0) instanceof Double index) || index < 0 || index != Math.floor(index)) {
+                throw new RuntimeError(null, "Argument index must be a whole number.");
+            }
+            return index < args.size() ? args.get(index.intValue()) : null;
+        }));
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    static void runtimeError(LoxEngine engine, RuntimeError error) {
+        engine.err.println("[line " + error.getLine() + "] Error: " + error.getMessage());
     }
 }
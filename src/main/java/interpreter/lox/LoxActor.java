@@ -0,0 +1,135 @@
+package interpreter.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An instance that owns its state. Other tasks can only call its methods:
+ * every call is put in the mailbox and returns a task right away, the calls
+ * run one at a time in arrival order. Actors need concurrent mode, their
+ * methods run on other threads and may use globals and closures. Since
+ * only the actor touches its instance, the instance itself is never
+ * locked.
+ *
+ * <p>An actor has no thread while its mailbox is empty. The first message
+ * starts a virtual thread that drains the mailbox in batches and ends when
+ * it finds the mailbox empty, so idle actors cost only their memory.
+ */
+public class LoxActor implements LoxObject {
+    private static final int BATCH_SIZE = 64;
+
+    private final LoxInstance instance;
+    private final Interpreter interpreter;
+    private final Queue<Message> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private LoxActor(LoxInstance instance, Interpreter interpreter) {
+        this.instance = instance;
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Returns a callable that creates actors of {@code klass}. The
+     * initializer runs on the caller, before the actor is visible to
+     * anybody else.
+     */
+    static LoxCallable classOf(LoxClass klass) {
+        return new LoxCallable() {
+            @Override
+            public int arity() {
+                return klass.arity();
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                LoxInstance instance = klass.instantiate(interpreter, arguments, false);
+                return new LoxActor(instance, interpreter.fork());
+            }
+
+            @Override
+            public String toString() {
+                return "<actor class " + klass.name + ">";
+            }
+        };
+    }
+
+    LoxInstance getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Object get(Interpreter interpreter, Token name) {
+        LoxFunction method = instance.getKlass().findMethod(name.lexeme);
+        if (method == null) {
+            throw new RuntimeError(name, "Actors only expose methods, '" + name.lexeme + "' is not one.");
+        }
+        LoxFunction bound = method.bind(instance);
+        return new NativeMethod(name.lexeme, bound.arity(), (i, arguments) -> send(bound, arguments));
+    }
+
+    private LoxTask send(LoxFunction method, List<Object> arguments) {
+        LoxTask reply = new LoxTask();
+        mailbox.add(new Message(method, arguments, reply));
+        if (draining.compareAndSet(false, true)) {
+            Thread.ofVirtual().start(this::drain);
+        }
+        return reply;
+    }
+
+    private void drain() {
+        List<Message> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            for (;;) {
+                Message message;
+                while (batch.size() < BATCH_SIZE && (message = mailbox.poll()) != null) {
+                    batch.add(message);
+                }
+                for (Message each : batch) {
+                    each.reply.run(interpreter, each.method, each.arguments);
+                }
+                if (!batch.isEmpty()) {
+                    batch.clear();
+                    continue;
+                }
+
+                draining.set(false);
+                // a message sent after the last poll but before the flag was
+                // cleared found the flag set and started no thread
+                if (mailbox.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            // fail the replies still waiting in the batch, finished ones keep their value,
+            // and let the rest of the mailbox run so the actor keeps working
+            for (Message each : batch) {
+                each.reply.fail(e);
+            }
+            draining.set(false);
+            if (!mailbox.isEmpty() && draining.compareAndSet(false, true)) {
+                Thread.ofVirtual().start(this::drain);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<actor " + instance.getKlass().name + ">";
+    }
+
+    private static class Message {
+        final LoxFunction method;
+        final List<Object> arguments;
+        final LoxTask reply;
+
+        Message(LoxFunction method, List<Object> arguments, LoxTask reply) {
+            this.method = method;
+            this.arguments = arguments;
+            this.reply = reply;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package interpreter.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded queue for passing values between tasks. {@code send} blocks
+ * while the channel is full and {@code receive} while it is empty.
+ */
+public class LoxChannel implements LoxObject {
+    // blocking queues do not take null, nil travels as this marker
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    public LoxChannel(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void send(Token name, Object value) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(name, "Interrupted while sending to a channel.");
+        }
+    }
+
+    public Object receive(Token name) {
+        try {
+            Object value = queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(name, "Interrupted while receiving from a channel.");
+        }
+    }
+
+    /**
+     * Returns the values sent and not received yet.
+     */
+    List<Object> getBuffered() {
+        List<Object> buffered = new ArrayList<>();
+        for (Object value : queue) {
+            buffered.add(value == NIL ? null : value);
+        }
+        return buffered;
+    }
+
+    @Override
+    public Object get(Interpreter interpreter, Token name) {
+        switch (name.lexeme) {
+            case "send":
+                return new NativeMethod("send", 1, (i, arguments) -> {
+                    send(name, arguments.get(0));
+                    return null;
+                });
+            case "receive":
+                return new NativeMethod("receive", 0, (i, arguments) -> receive(name));
+            case "size":
+                return new NativeMethod("size", 0, (i, arguments) -> (double) queue.size());
+        }
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -1,5 +1,6 @@
 package interpreter.lox;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -8,31 +9,47 @@ public class LoxClass extends LoxInstance implements LoxCallable {
     private final LoxClass superClass;
     public final String name;
     private final Map<String, LoxFunction> methods;
+    private final boolean concurrent;
 
-    public LoxClass(String name, LoxClass superClass, Map<String, LoxFunction> methods) {
-        super(null);
+    public LoxClass(String name, LoxClass superClass, Map<String, LoxFunction> methods, boolean concurrent) {
+        super(null, concurrent);
         this.superClass = superClass;
         this.name = name;
-        this.methods = methods;
+        // never changes after construction, so tasks can look methods up without locking
+        this.methods = Map.copyOf(methods);
+        this.concurrent = concurrent;
         if (!allStaticMethods(methods)) {
-            this.setKlass(new LoxClass(name + " meta", superClass, staticMethods(methods)));
+            this.setKlass(new LoxClass(name + " meta", superClass, staticMethods(methods), concurrent));
         } else {
             this.setKlass(this);
         }
     }
 
     public LoxFunction findMethod(String name) {
+        LoxMetrics.methodLookup();
+        return lookup(name);
+    }
+
+    private LoxFunction lookup(String name) {
         if (methods.containsKey(name)) {
             return methods.get(name);
         }
 
         if (superClass != null) {
-            return superClass.findMethod(name);
+            return superClass.lookup(name);
         }
 
         return null;
     }
 
+    Collection<LoxFunction> getMethods() {
+        return methods.values();
+    }
+
+    LoxClass getSuperClass() {
+        return superClass;
+    }
+
     public LoxInstance getMetaClass() {
         return this.getKlass();
     }
@@ -44,9 +61,17 @@ public class LoxClass extends LoxInstance implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        LoxInstance instance = new LoxInstance(this);
+        return instantiate(interpreter, arguments, concurrent);
+    }
+
+    LoxInstance instantiate(Interpreter interpreter, List<Object> arguments, boolean concurrent) {
+        LoxInstance instance = new LoxInstance(this, concurrent);
+        LoxMetrics.instance();
+        interpreter.allocated(AllocationProfiler.Kind.INSTANCE);
         LoxFunction initializer = findMethod("init");
         if (initializer != null) {
+            interpreter.allocated(AllocationProfiler.Kind.FUNCTION);
+            interpreter.allocated(AllocationProfiler.Kind.ENVIRONMENT);
             initializer.bind(instance).call(interpreter, arguments);
         }
         return instance;
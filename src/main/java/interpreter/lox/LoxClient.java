@@ -0,0 +1,55 @@
+package interpreter.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Sends a script to a running {@link LoxServer} and copies what it prints
+ * to this process' stdout and stderr as it arrives.
+ */
+class LoxClient {
+
+    /**
+     * Runs {@code script} on the server listening on {@code socket} and
+     * returns the exit status of the run.
+     *
+     * @throws IOException if no server is listening or the connection breaks
+     */
+    static int run(Path socket, String script, List<String> args) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeUTF(Paths.get("").toAbsolutePath().toString());
+            out.writeUTF(script);
+            out.writeInt(args.size());
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            for (;;) {
+                byte kind = in.readByte();
+                if (kind == LoxServer.EXIT) {
+                    return in.readInt();
+                }
+                byte[] bytes = in.readNBytes(in.readInt());
+                if (kind == LoxServer.OUT) {
+                    System.out.write(bytes);
+                    System.out.flush();
+                } else {
+                    System.err.write(bytes);
+                    System.err.flush();
+                }
+            }
+        }
+    }
+}
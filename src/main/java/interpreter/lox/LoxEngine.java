@@ -0,0 +1,383 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Entry point for embedding Lox. An engine owns everything that used to be
+ * global to the process: where output and errors go, the compiled script
+ * cache, the module search path and the compiled code of every module it
+ * has seen. Compiling gives back a {@link Script} that can be run any
+ * number of times, each run gets its own interpreter and globals.
+ *
+ * <p>Engines share no state with each other and the compiled code they
+ * hold is never modified after compilation, so one engine can be used from
+ * several threads as long as each run stays on its own interpreter.
+ */
+public class LoxEngine {
+    private final ScriptCache cache;
+    private final ModulePath modulePath;
+    private final boolean lazyModules;
+    private final boolean concurrent;
+    final PrintStream out;
+    final PrintStream err;
+
+    // bundled modules never change while the interpreter runs
+    private static final FileTime BUNDLED = FileTime.fromMillis(0);
+
+    private final Map<Path, ModuleCode> modules;
+
+    private volatile Profiler profiler;
+    private volatile AllocationProfiler allocationProfiler;
+    private volatile Statistics statistics;
+    private volatile Coverage coverage;
+
+    public LoxEngine() {
+        this(ScriptCache.fromEnvironment(), ModulePath.fromEnvironment(null), false, false, System.out, System.err);
+    }
+
+    /**
+     * @param concurrent whether scripts may use {@code spawn}. In concurrent
+     *                   mode environments and instances lock on every access
+     *                   so tasks can share them safely.
+     */
+    public LoxEngine(ScriptCache cache,
+                     ModulePath modulePath,
+                     boolean lazyModules,
+                     boolean concurrent,
+                     PrintStream out,
+                     PrintStream err) {
+        this(cache, modulePath, lazyModules, concurrent, out, err, new ConcurrentHashMap<>());
+    }
+
+    private LoxEngine(ScriptCache cache,
+                      ModulePath modulePath,
+                      boolean lazyModules,
+                      boolean concurrent,
+                      PrintStream out,
+                      PrintStream err,
+                      Map<Path, ModuleCode> modules) {
+        this.modules = modules;
+        this.cache = cache;
+        this.modulePath = modulePath;
+        this.lazyModules = lazyModules;
+        this.concurrent = concurrent;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Compiles {@code source} and every module it imports.
+     *
+     * @throws CompileError if the script or one of its modules has errors
+     */
+    public Script compile(String source) {
+        return compile(source, "<script>");
+    }
+
+    /**
+     * Compiles {@code source} like {@link #compile(String)}, naming the
+     * script {@code name} in metrics.
+     */
+    public Script compile(String source, String name) {
+        return compile(source, name, true);
+    }
+
+    Script compile(String source, String name, boolean cacheable) {
+        CompiledScript script = compileSource(source, name, cacheable);
+        preload(script);
+        return new Script(this, script, name);
+    }
+
+    /**
+     * Returns an engine searching modules on {@code modulePath} and writing
+     * to {@code out} and {@code err} that shares its other settings and the
+     * compiled modules with this one.
+     */
+    LoxEngine withOutput(ModulePath modulePath, PrintStream out, PrintStream err) {
+        return new LoxEngine(cache, modulePath, lazyModules, concurrent, out, err, modules);
+    }
+
+    /**
+     * Compiles the script at {@code path}. Like modules, it is kept in
+     * memory and only compiled again when the file changes.
+     */
+    Script compileFile(Path path) throws IOException {
+        CompiledScript script = compileModule(path);
+        preload(script);
+        return new Script(this, script, path.toString());
+    }
+
+    /**
+     * Starts sampling the Lox call stacks of the interpreters created from
+     * now on, until the returned profiler is stopped.
+     */
+    public Profiler startProfiler() {
+        profiler = new Profiler();
+        return profiler;
+    }
+
+    Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Starts counting the allocations of the interpreters created from now
+     * on by the Lox line that caused them.
+     */
+    public AllocationProfiler startAllocationProfiler() {
+        allocationProfiler = new AllocationProfiler();
+        return allocationProfiler;
+    }
+
+    AllocationProfiler getAllocationProfiler() {
+        return allocationProfiler;
+    }
+
+    /**
+     * Starts timing the compile phases and the execution of the scripts and
+     * modules compiled and run from now on.
+     */
+    public Statistics startStatistics() {
+        statistics = new Statistics();
+        return statistics;
+    }
+
+    Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Starts recording the statements and branches run by the scripts and
+     * modules run from now on.
+     */
+    public Coverage startCoverage() {
+        coverage = new Coverage();
+        return coverage;
+    }
+
+    Coverage getCoverage() {
+        return coverage;
+    }
+
+    ModulePath getModulePath() {
+        return modulePath;
+    }
+
+    boolean isLazyModules() {
+        return lazyModules;
+    }
+
+    boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Returns the compiled code of the module at {@code path}, compiling it
+     * only if it was never seen or the file changed since.
+     */
+    CompiledScript compileModule(Path path) throws IOException {
+        if (!path.isAbsolute()) {
+            return compileBundled(path);
+        }
+        FileTime modified = Files.getLastModifiedTime(path);
+        ModuleCode code = modules.get(path);
+        if (code != null && code.modified.equals(modified)) {
+            return code.script;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        CompiledScript script = compileSource(new String(bytes, Charset.defaultCharset()),
+                path.getFileName().toString(),
+                true);
+        modules.put(path, new ModuleCode(modified, script));
+        return script;
+    }
+
+    private CompiledScript compileBundled(Path path) throws IOException {
+        ModuleCode code = modules.get(path);
+        if (code != null) {
+            return code.script;
+        }
+        String source = BundledModules.source(path.toString());
+        if (source == null) {
+            throw new IOException("Can't find '" + path + "'.");
+        }
+        CompiledScript script = compileSource(source, path.toString(), true);
+        modules.put(path, new ModuleCode(BUNDLED, script));
+        return script;
+    }
+
+    private boolean isCompiled(Path path) {
+        ModuleCode code = modules.get(path);
+        if (!path.isAbsolute()) {
+            return code != null;
+        }
+        try {
+            return code != null && code.modified.equals(Files.getLastModifiedTime(path));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private CompiledScript compileSource(String source, String name, boolean cacheable) {
+        Statistics statistics = this.statistics;
+        if (cacheable && cache != null) {
+            CompiledScript cached = cache.load(source);
+            if (cached != null) {
+                if (statistics != null) {
+                    statistics.cached(name);
+                }
+                return cached;
+            }
+        }
+
+        ErrorReporter reporter = new ErrorReporter(err);
+        long start = System.nanoTime();
+        LoxEvents.CompilePhase event = begin("scan");
+        Scanner scanner = new Scanner(source, reporter);
+        List<Token> tokens = scanner.scanTokens();
+        commit(event, tokens.size());
+        long scanned = System.nanoTime();
+
+        event = begin("parse");
+        Parser parser = new Parser(tokens, reporter);
+        List<Stmt> statements = parser.parse();
+        commit(event, statements.size());
+        long parsed = System.nanoTime();
+
+        if (reporter.hadError()) {
+            throw new CompileError(reporter.getErrors());
+        }
+
+        event = begin("resolve");
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+        resolver.endScope();
+        commit(event, resolver.getLocals().size());
+
+        if (reporter.hadError()) {
+            throw new CompileError(reporter.getErrors());
+        }
+        if (statistics != null) {
+            statistics.compiled(name,
+                    tokens.size(),
+                    scanned - start,
+                    resolver.getNodes(),
+                    parsed - scanned,
+                    resolver.getLocals().size(),
+                    resolver.getGlobals(),
+                    System.nanoTime() - parsed);
+        }
+
+        CompiledScript script = new CompiledScript(statements, resolver.getLocals(), parser.getImports());
+        if (cacheable && cache != null) {
+            cache.store(source, script);
+        }
+        return script;
+    }
+
+    private static LoxEvents.CompilePhase begin(String phase) {
+        if (!LoxEvents.recording()) {
+            return null;
+        }
+        LoxEvents.CompilePhase event = new LoxEvents.CompilePhase();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    private static void commit(LoxEvents.CompilePhase event, int size) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /**
+     * Compiles every module reachable through the imports of {@code script}
+     * ahead of execution. Independent modules are scanned, parsed and
+     * resolved in parallel on the common fork join pool; running them is
+     * left to the import statements, in program order.
+     */
+    private void preload(CompiledScript script) {
+        if (script.imports.isEmpty()) {
+            return;
+        }
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        ForkJoinPool.commonPool().invoke(new Preload(null, script, new ConcurrentHashMap<>(), errors));
+        if (!errors.isEmpty()) {
+            throw new CompileError(errors);
+        }
+    }
+
+    private class Preload extends RecursiveAction {
+        private final Path path;
+        private final Map<Path, Boolean> seen;
+        private final List<String> errors;
+        private CompiledScript script;
+
+        Preload(Path path, CompiledScript script, Map<Path, Boolean> seen, List<String> errors) {
+            this.path = path;
+            this.script = script;
+            this.seen = seen;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (script == null) {
+                try {
+                    script = compileModule(path);
+                } catch (IOException e) {
+                    // reported again by the import statement if it ever runs
+                    return;
+                } catch (CompileError e) {
+                    errors.addAll(e.getErrors());
+                    return;
+                }
+            }
+
+            List<Preload> imports = new ArrayList<>();
+            for (String name : script.imports) {
+                Path module;
+                try {
+                    module = modulePath.find(name);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (isCompiled(module)) {
+                    continue;
+                }
+                if (seen.putIfAbsent(module, true) == null) {
+                    imports.add(new Preload(module, null, seen, errors));
+                }
+            }
+            invokeAll(imports);
+        }
+    }
+
+    private static class ModuleCode {
+        final FileTime modified;
+        final CompiledScript script;
+
+        ModuleCode(FileTime modified, CompiledScript script) {
+            this.modified = modified;
+            this.script = script;
+        }
+    }
+}
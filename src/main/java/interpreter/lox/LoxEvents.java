@@ -0,0 +1,93 @@
+package interpreter.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the interpreter. They cost a check of a
+ * flag when no recording is running. Thresholds and enablement can be
+ * changed in the recording settings like for any JDK event, for example
+ * {@code lox.FunctionCall#threshold=1 ms}.
+ *
+ * <p>Loading an event class starts up the recorder, which takes longer than
+ * running a small script, so callers only create events once
+ * {@link #recording()} says the recorder is running.
+ */
+final class LoxEvents {
+    private LoxEvents() {
+    }
+
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    // checked before every function call, creating the event is not free there
+    static boolean recordingCalls() {
+        return recording() && Calls.TYPE.isEnabled();
+    }
+
+    private static final class Calls {
+        static final EventType TYPE = EventType.getEventType(FunctionCall.class);
+    }
+
+    @Name("lox.CompilePhase")
+    @Label("Lox Compile Phase")
+    @Category("Lox")
+    @Description("Scanning, parsing or resolving one script or module")
+    @StackTrace(false)
+    static class CompilePhase extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Size")
+        @Description("Tokens scanned, statements parsed or variables resolved")
+        int size;
+    }
+
+    @Name("lox.Execute")
+    @Label("Lox Execute")
+    @Category("Lox")
+    @Description("Running the top level of a script")
+    @StackTrace(false)
+    static class Execute extends Event {
+        @Label("Statements")
+        int statements;
+    }
+
+    @Name("lox.ModuleLoad")
+    @Label("Lox Module Load")
+    @Category("Lox")
+    @Description("Compiling an imported module and, unless it is lazy, running its body")
+    @StackTrace(false)
+    static class ModuleLoad extends Event {
+        @Label("Module")
+        String module;
+
+        @Label("Path")
+        String path;
+
+        @Label("Lazy")
+        boolean lazy;
+    }
+
+    @Name("lox.FunctionCall")
+    @Label("Lox Function Call")
+    @Category("Lox")
+    @Description("A call to a Lox function that took longer than the threshold")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static class FunctionCall extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Line")
+        int line;
+    }
+}
@@ -1,11 +1,13 @@
 package interpreter.lox;
 
+import java.io.Serializable;
 import java.util.List;
 
-public class LoxFunction implements LoxCallable {
+public class LoxFunction implements LoxCallable, Serializable {
 
     private final Expr.AnFunction declaration;
     private final Environment closure;
+    private final LoxModule module;
     private final String kind;
     private final String name;
 
@@ -15,9 +17,11 @@ public class LoxFunction implements LoxCallable {
                        String kind,
                        Expr.AnFunction declaration,
                        Environment closure,
+                       LoxModule module,
                        boolean isInitializer) {
         this.declaration = declaration;
         this.closure = closure;
+        this.module = module;
         this.kind = (name == null ? "function" : kind);
         this.name = (name == null ? "anonymous" : name);
         this.isInitializer = isInitializer;
@@ -30,12 +34,52 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        LoxEvents.FunctionCall event = null;
+        if (LoxEvents.recordingCalls()) {
+            event = new LoxEvents.FunctionCall();
+            event.begin();
+        }
+        Budget budget = interpreter.getBudget();
+        if (budget != null) {
+            budget.enterCall(line());
+        }
+        ShadowStack stack = interpreter.getStack();
+        if (stack != null) {
+            // until its first statement runs, time in the function goes to that line
+            stack.push(name, line());
+        }
+        try {
+            return invoke(interpreter, arguments);
+        } finally {
+            if (budget != null) {
+                budget.exitCall();
+            }
+            if (stack != null) {
+                stack.pop();
+            }
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.function = name;
+                    event.line = line();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private int line() {
+        return declaration.body.isEmpty() ? 0 : declaration.body.get(0).line;
+    }
+
+    private Object invoke(Interpreter interpreter, List<Object> arguments) {
+        interpreter.allocated(AllocationProfiler.Kind.ENVIRONMENT);
         Environment environment = new Environment(closure);
         for (int i = 0; i < declaration.parameters.size(); i++) {
             environment.define(declaration.parameters.get(i).lexeme, arguments.get(i));
         }
         try {
-            interpreter.executeBlock(declaration.body, environment);
+            interpreter.executeBlock(declaration.body, environment, module);
         } catch (Return returnValue) {
             if (isInitializer) {
                 return closure.getAt(0, "this");
@@ -51,7 +95,11 @@ public class LoxFunction implements LoxCallable {
     public LoxFunction bind(LoxInstance instance) {
         Environment environment = new Environment(closure);
         environment.define("this", instance);
-        return new LoxFunction(this.name, this.kind, declaration, environment, isInitializer);
+        return new LoxFunction(this.name, this.kind, declaration, environment, module, isInitializer);
+    }
+
+    Environment getClosure() {
+        return closure;
     }
 
     public String getKind() {
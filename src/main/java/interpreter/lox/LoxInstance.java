@@ -1,20 +1,33 @@
 package interpreter.lox;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+
+public class LoxInstance implements Serializable {
+    // marks a field that is not set, null is the value of nil
+    private static final Object UNSET = new Object();
 
-public class LoxInstance {
     private LoxClass klass;
 
-    private Map<String, Object> fields = new HashMap<>();
+    private final Map<String, Object> fields = new HashMap<>();
+
+    // only set in concurrent mode, where instances can be shared by several tasks
+    private transient Object lock;
 
-    public LoxInstance(LoxClass klass) {
+    public LoxInstance(LoxClass klass, boolean concurrent) {
         this.klass = klass;
+        this.lock = concurrent ? StripedLocks.of(this) : null;
     }
 
     public Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        Object value = read(name.lexeme);
+        if (value != UNSET) {
+            return value;
         }
 
         LoxFunction method = klass.findMethod(name.lexeme);
@@ -26,7 +39,56 @@ public class LoxInstance {
     }
 
     public void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        if (lock == null) {
+            fields.put(name.lexeme, value);
+            return;
+        }
+        synchronized (lock) {
+            fields.put(name.lexeme, value);
+        }
+    }
+
+    /**
+     * Sets the field to {@code update} if it currently holds {@code expected},
+     * as one atomic step. An unset field holds nil.
+     */
+    public boolean compareAndSet(String name, Object expected, Object update) {
+        synchronized (lockForUpdate()) {
+            Object current = fields.get(name);
+            if (!Objects.equals(current, expected)) {
+                return false;
+            }
+            fields.put(name, update);
+            return true;
+        }
+    }
+
+    /**
+     * Adds {@code delta} to a numeric field as one atomic step and returns the
+     * previous value. An unset field counts as zero.
+     */
+    public double getAndAdd(String name, double delta) {
+        synchronized (lockForUpdate()) {
+            Object current = fields.getOrDefault(name, 0.0);
+            if (!(current instanceof Double number)) {
+                throw new RuntimeError(null, "Field '" + name + "' must be a number.");
+            }
+            fields.put(name, number + delta);
+            return number;
+        }
+    }
+
+    Map<String, Object> getFields() {
+        if (lock == null) {
+            return new HashMap<>(fields);
+        }
+        synchronized (lock) {
+            return new HashMap<>(fields);
+        }
+    }
+
+    boolean hasField(String name) {
+        return read(name) != UNSET;
     }
 
     public void setKlass(LoxClass klass) {
@@ -37,6 +99,28 @@ public class LoxInstance {
         return klass;
     }
 
+    private Object read(String name) {
+        if (lock == null) {
+            return fields.getOrDefault(name, UNSET);
+        }
+        synchronized (lock) {
+            return fields.getOrDefault(name, UNSET);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(lock != null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        lock = in.readBoolean() ? StripedLocks.of(this) : null;
+    }
+
+    private Object lockForUpdate() {
+        return lock == null ? StripedLocks.of(this) : lock;
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,174 @@
+package interpreter.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the counters of {@link LoxMetricsMXBean}. Counting is off
+ * unless the JVM runs with {@code -Dlox.metrics=true}, the flag is read
+ * once so the checks in the interpreter compile away when it is off. The
+ * counters are {@link LongAdder}s, so interpreters on many threads do not
+ * contend on them.
+ */
+public final class LoxMetrics implements LoxMetricsMXBean {
+    static final boolean ENABLED = Boolean.getBoolean("lox.metrics");
+    static final LoxMetrics INSTANCE = new LoxMetrics();
+
+    private static final int BUCKETS = 18;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder instances = new LongAdder();
+    private final LongAdder environments = new LongAdder();
+    private final LongAdder moduleLoads = new LongAdder();
+    private final LongAdder moduleCacheHits = new LongAdder();
+    private final LongAdder methodLookups = new LongAdder();
+    private final Map<String, Histogram> executionTimes = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(INSTANCE, new ObjectName("interpreter.lox:type=Metrics"));
+            } catch (JMException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private LoxMetrics() {
+    }
+
+    static void call() {
+        if (ENABLED) {
+            INSTANCE.calls.increment();
+        }
+    }
+
+    static void instance() {
+        if (ENABLED) {
+            INSTANCE.instances.increment();
+        }
+    }
+
+    static void environment() {
+        if (ENABLED) {
+            INSTANCE.environments.increment();
+        }
+    }
+
+    static void moduleLoad() {
+        if (ENABLED) {
+            INSTANCE.moduleLoads.increment();
+        }
+    }
+
+    static void moduleCacheHit() {
+        if (ENABLED) {
+            INSTANCE.moduleCacheHits.increment();
+        }
+    }
+
+    static void methodLookup() {
+        if (ENABLED) {
+            INSTANCE.methodLookups.increment();
+        }
+    }
+
+    static void executed(String script, long nanos) {
+        if (ENABLED) {
+            INSTANCE.executionTimes.computeIfAbsent(script, k -> new Histogram()).add(nanos);
+        }
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getInstanceAllocations() {
+        return instances.sum();
+    }
+
+    @Override
+    public long getEnvironmentAllocations() {
+        return environments.sum();
+    }
+
+    @Override
+    public long getModuleLoads() {
+        return moduleLoads.sum();
+    }
+
+    @Override
+    public long getModuleCacheHits() {
+        return moduleCacheHits.sum();
+    }
+
+    @Override
+    public double getModuleCacheHitRate() {
+        long hits = moduleCacheHits.sum();
+        long imports = hits + moduleLoads.sum();
+        return imports == 0 ? 0 : (double) hits / imports;
+    }
+
+    @Override
+    public long getMethodLookups() {
+        return methodLookups.sum();
+    }
+
+    @Override
+    public Map<String, ExecutionTimes> getExecutionTimes() {
+        Map<String, ExecutionTimes> times = new HashMap<>();
+        for (Map.Entry<String, Histogram> entry : executionTimes.entrySet()) {
+            times.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return times;
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        instances.reset();
+        environments.reset();
+        moduleLoads.reset();
+        moduleCacheHits.reset();
+        methodLookups.reset();
+        executionTimes.clear();
+    }
+
+    private static class Histogram {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void add(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            // 0 ms goes to bucket 0, [2^(i-1), 2^i) ms to bucket i
+            int bucket = 64 - Long.numberOfLeadingZeros(millis);
+            buckets[Math.min(bucket, BUCKETS - 1)].increment();
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        ExecutionTimes snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new ExecutionTimes(count.sum(), TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()), counts);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package interpreter.lox;
+
+import java.util.Map;
+import javax.management.ConstructorParameters;
+
+/**
+ * Counters of all interpreters in the JVM, published as
+ * {@code interpreter.lox:type=Metrics} when the JVM runs with
+ * {@code -Dlox.metrics=true}.
+ */
+public interface LoxMetricsMXBean {
+
+    long getCalls();
+
+    long getInstanceAllocations();
+
+    long getEnvironmentAllocations();
+
+    /**
+     * Imports that had to read and run a module, the misses of the module
+     * registries.
+     */
+    long getModuleLoads();
+
+    /**
+     * Imports of a module the importing interpreter had already loaded.
+     */
+    long getModuleCacheHits();
+
+    double getModuleCacheHitRate();
+
+    /**
+     * Lookups of a method by name along the superclass chain, for calls,
+     * bound method accesses and instantiation.
+     */
+    long getMethodLookups();
+
+    /**
+     * Execution times of the top level of every script, by script name.
+     */
+    Map<String, ExecutionTimes> getExecutionTimes();
+
+    void reset();
+
+    /**
+     * How many runs of a script took how long. Bucket 0 counts the runs
+     * under a millisecond, bucket i the runs from 2^(i-1) up to 2^i
+     * milliseconds, the last bucket also every longer run.
+     */
+    class ExecutionTimes {
+        private final long count;
+        private final long totalMillis;
+        private final long[] buckets;
+
+        @ConstructorParameters({"count", "totalMillis", "buckets"})
+        public ExecutionTimes(long count, long totalMillis, long[] buckets) {
+            this.count = count;
+            this.totalMillis = totalMillis;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public long[] getBuckets() {
+            return buckets;
+        }
+    }
+}
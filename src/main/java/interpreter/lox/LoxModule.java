@@ -1,26 +1,125 @@
 package interpreter.lox;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class LoxModule {
-    Environment environment;
-    Map<Expr, Integer> locals;
+/**
+ * A unit of code with its own top level: the main script or an imported
+ * file. Each module has a private global environment and its own table of
+ * resolved variables, so names defined by a module never leak into the
+ * scripts that import it. Functions remember the module they were declared
+ * in and switch back to it when called.
+ */
+public class LoxModule implements LoxObject, Serializable {
+    final String name;
+    // only needed until the module is compiled, snapshots leave it out
+    final transient Path path;
+    // names the module in allocation profiles, the main module takes the name of its script
+    String label;
+    final Environment environment;
+    Map<Expr, Integer> locals = new HashMap<>();
 
-    public LoxModule(Token name) {
-        List<Object> env;
+    // set while locals is the map of a compiled script, which must not be written to
+    private boolean sharedLocals = false;
+
+    private CompiledScript script;
+    private volatile boolean initialized = false;
+    // why the body of a lazy module failed, reported again on every later access
+    private RuntimeError failure;
+
+    // only set while collecting coverage
+    transient Coverage.File coverage;
+
+    LoxModule(String name, Path path, Environment natives) {
+        this.name = name;
+        this.label = name;
+        this.path = path;
+        this.environment = new Environment(natives);
+    }
+
+    static String bindingName(Stmt.Import stmt) {
+        if (stmt.alias != null) {
+            return stmt.alias.lexeme;
+        }
+        return stmt.name.lexeme.substring(1, stmt.name.lexeme.lastIndexOf('.'));
+    }
+
+    void addLocals(Map<Expr, Integer> resolved) {
+        if (locals.isEmpty()) {
+            locals = resolved;
+            sharedLocals = true;
+            return;
+        }
+        if (sharedLocals) {
+            locals = new HashMap<>(locals);
+            sharedLocals = false;
+        }
+        locals.putAll(resolved);
+    }
+
+    void compile(Token name, LoxEngine engine) {
         try {
-            env = Lox.runModuleFile(name.literal.toString());
+            script = engine.compileModule(path);
         } catch (IOException e) {
-            System.out.println(e.getMessage());
-            throw new RuntimeError(name, "Error accessing module '" + name.literal + "'");
+            throw new RuntimeError(name, "Error accessing module '" + name.literal + "': " + e.getMessage());
+        } catch (CompileError e) {
+            throw new RuntimeError(name, "Error compiling module '" + name.literal + "'");
+        }
+        addLocals(script.locals);
+        Coverage collected = engine.getCoverage();
+        if (collected != null) {
+            coverage = collected.file(path.toString(), script);
+        }
+    }
+
+    void execute(Interpreter interpreter) {
+        List<Stmt> statements = script.statements;
+        // cleared before running so an access from inside an import cycle
+        // reports the module as not initialized instead of running it twice
+        script = null;
+        interpreter.interpretModule(this, statements);
+        initialized = true;
+    }
+
+    @Override
+    public Object get(Interpreter interpreter, Token name) {
+        if (!initialized) {
+            initializeLazily(interpreter, name);
+        }
+        // only the module's own definitions are exported, never the natives behind them.
+        // Looked up by name: the importer is resolved, and cached, apart from the module,
+        // which is found on the module path at run time and can change without the
+        // importer changing, so an index resolved into the importer could go stale
+        return environment.getOwn(name);
+    }
+
+    private synchronized void initializeLazily(Interpreter interpreter, Token name) {
+        if (initialized) {
+            return;
+        }
+        if (failure != null) {
+            throw new RuntimeError(name, "Module '" + this.name + "' failed to initialize: " + failure.getMessage());
+        }
+        if (script == null) {
+            throw new RuntimeError(name, "Module '" + this.name + "' is not initialized yet.");
+        }
+        // lazily imported module, run its body on first member access
+        try {
+            execute(interpreter);
+        } catch (RuntimeError error) {
+            // like a failed eager import: the next import loads the module again
+            failure = error;
+            interpreter.getModules().remove(this);
+            throw error;
         }
-        environment = (Environment) env.get(0);
-        locals = (Map<Expr, Integer>) env.get(1);
     }
 
-    public Object get(Token name) {
-        return environment.get(name);
+    @Override
+    public String toString() {
+        return "<module " + name + ">";
     }
 }
@@ -0,0 +1,9 @@
+package interpreter.lox;
+
+/**
+ * A value implemented in Java whose members can be read with the dot
+ * syntax, like modules, tasks and channels.
+ */
+public interface LoxObject {
+    Object get(Interpreter interpreter, Token name);
+}
@@ -0,0 +1,190 @@
+package interpreter.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs scripts sent by {@link LoxClient} over a Unix domain socket, so the
+ * JVM, the JIT and the compiled modules stay warm between runs.
+ *
+ * <p>A request is the working directory of the client, the script path and
+ * its arguments, all as UTF strings, the arguments preceded by their count.
+ * The reply is a stream of frames, a kind byte followed by a length and the
+ * bytes of stdout or stderr, ending with an exit frame holding the status.
+ * Every request runs on its own virtual thread and its own interpreter.
+ */
+class LoxServer {
+    static final byte EXIT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+
+    private final LoxEngine engine;
+    private final String modulePath;
+    private final Path socket;
+
+    // module search paths by client directory, kept so their indexes stay warm
+    private final Map<Path, ModulePath> modulePaths = new ConcurrentHashMap<>();
+
+    /**
+     * @param modulePath the {@code --module-path} the server was started
+     *                   with, or null. It is resolved against the directory
+     *                   of each client, as if the client ran the script.
+     */
+    LoxServer(LoxEngine engine, String modulePath, Path socket) {
+        this.engine = engine;
+        this.modulePath = modulePath;
+        this.socket = socket;
+    }
+
+    /**
+     * Uses {@code socket} if given, otherwise the {@code LOX_SOCKET}
+     * environment variable, otherwise a per user socket in the temporary
+     * directory.
+     */
+    static Path socketFromEnvironment(String socket) {
+        if (socket == null || socket.isEmpty()) {
+            socket = System.getenv("LOX_SOCKET");
+        }
+        if (socket == null || socket.isEmpty()) {
+            return Paths.get(System.getProperty("java.io.tmpdir"), "jlox-" + System.getProperty("user.name") + ".sock");
+        }
+        return Paths.get(socket);
+    }
+
+    /**
+     * Listens on the socket until the process is stopped. A socket file left
+     * by a server that died is replaced, but not one a server still listens
+     * on.
+     */
+    void serve() throws IOException {
+        if (listening(socket)) {
+            throw new IOException("another server is listening on it");
+        }
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException ignored) {
+                }
+            }));
+            engine.err.println("Listening on " + socket);
+            for (;;) {
+                SocketChannel client = server.accept();
+                requests.submit(() -> handle(client));
+            }
+        }
+    }
+
+    private static boolean listening(Path socket) {
+        if (!Files.exists(socket)) {
+            return false;
+        }
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            Path directory = Paths.get(in.readUTF());
+            Path script = directory.resolve(in.readUTF());
+            int count = in.readInt();
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                args.add(in.readUTF());
+            }
+
+            PrintStream stdout = new PrintStream(new Frames(out, OUT), true);
+            PrintStream stderr = new PrintStream(new Frames(out, ERR), true);
+            ModulePath path = modulePaths.computeIfAbsent(directory,
+                    d -> ModulePath.fromEnvironment(modulePath, d));
+            int status = run(engine.withOutput(path, stdout, stderr), script, args);
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away, nobody is left to tell
+        }
+    }
+
+    private static int run(LoxEngine engine, Path path, List<String> args) {
+        try {
+            engine.compileFile(path.toRealPath()).run(Lox.arguments(args));
+        } catch (IOException e) {
+            engine.err.println("Can't read " + path + ".");
+            return 66;
+        } catch (CompileError error) {
+            return 65;
+        } catch (RuntimeError error) {
+            Lox.runtimeError(engine, error);
+            return 70;
+        } catch (StackOverflowError error) {
+            // unbounded recursion only fails its own request, the client still gets its exit frame
+            engine.err.println("Error: Stack overflow.");
+            return 70;
+        } catch (RuntimeException e) {
+            engine.err.println("Error: " + e);
+            return 70;
+        }
+        return 0;
+    }
+
+    /**
+     * Writes everything as frames of one kind. Stdout and stderr of a
+     * request share the socket, so frames are written whole under its lock.
+     */
+    private static class Frames extends OutputStream {
+        private final DataOutputStream out;
+        private final byte kind;
+
+        Frames(DataOutputStream out, byte kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (out) {
+                out.writeByte(kind);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+                out.flush();
+            }
+        }
+    }
+}
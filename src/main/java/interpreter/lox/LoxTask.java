@@ -0,0 +1,104 @@
+package interpreter.lox;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The pending result of work running on another thread: a function started
+ * by the {@code spawn} native, or a method call sent to an actor.
+ * {@code task.join()} waits for it and returns the value it produced.
+ */
+public class LoxTask implements LoxObject {
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+    LoxTask() {
+    }
+
+    static LoxTask start(Interpreter interpreter, LoxCallable function) {
+        LoxTask task = new LoxTask();
+        Thread.ofVirtual().start(() -> task.run(interpreter, function, List.of()));
+        return task;
+    }
+
+    void run(Interpreter interpreter, LoxCallable function, List<Object> arguments) {
+        Cancellation cancellation = interpreter.getCancellation();
+        if (cancellation != null) {
+            // cancelling the run that spawned the task also interrupts it
+            cancellation.enter(interpreter);
+        }
+        HeapUsage heap = interpreter.getHeap();
+        if (heap != null) {
+            heap.enter(interpreter);
+        }
+        try {
+            result.complete(function.call(interpreter, arguments));
+        } catch (Throwable e) {
+            // anything, a stack overflow included, must reach join or it waits forever
+            fail(e);
+        } finally {
+            if (heap != null) {
+                heap.exit(interpreter);
+            }
+            if (cancellation != null) {
+                cancellation.exit();
+            }
+        }
+    }
+
+    /**
+     * Returns the value the task produced, or null while it runs or if it
+     * failed.
+     */
+    Object getResult() {
+        return result.isDone() && !result.isCompletedExceptionally() ? result.join() : null;
+    }
+
+    /**
+     * Fails the task with {@code failure}, unless it already finished.
+     */
+    void fail(Throwable failure) {
+        result.completeExceptionally(failure);
+    }
+
+    public Object join(Token name) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(name, "Interrupted while joining a task.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ResourceLimitError || e.getCause() instanceof CancelledError) {
+                // a limit hit by the task ends the run that joins it, like one hit by the run itself
+                throw (RuntimeError) e.getCause();
+            }
+            throw new RuntimeError(name, "Task failed: " + describe(e.getCause()));
+        }
+    }
+
+    private static String describe(Throwable failure) {
+        if (failure instanceof RuntimeError error) {
+            return error.getMessage() + " [line " + error.getLine() + "]";
+        }
+        if (failure instanceof StackOverflowError) {
+            return "Stack overflow.";
+        }
+        return failure.toString();
+    }
+
+    @Override
+    public Object get(Interpreter interpreter, Token name) {
+        if (name.lexeme.equals("join")) {
+            return new NativeMethod("join", 0, (i, arguments) -> join(name));
+        }
+        if (name.lexeme.equals("done")) {
+            return new NativeMethod("done", 0, (i, arguments) -> result.isDone());
+        }
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,186 @@
+package interpreter.lox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the names used in {@code import} statements to module files.
+ * The roots are searched in order, the first one holding a module with the
+ * requested name wins. Every root is walked once to build an index of
+ * module file names, lookups are then a map access. The index remembers
+ * the modification time of every directory it walked and is rebuilt when a
+ * lookup misses and any of them changed. The index is replaced as a whole
+ * when rebuilt, so lookups from several threads need no locking. Names not
+ * found on any root fall back to the modules bundled with the interpreter.
+ */
+public class ModulePath {
+    private static final int MAX_DEPTH = 100;
+    private static final String EXTENSION = ".lox";
+
+    private final List<Path> roots;
+
+    private volatile Index index;
+
+    public ModulePath(List<Path> roots) {
+        this.roots = roots;
+    }
+
+    /**
+     * Builds the search path from {@code --module-path} if given, otherwise
+     * from the {@code LOX_PATH} environment variable. Without either, modules
+     * are searched below the working directory.
+     */
+    public static ModulePath fromEnvironment(String modulePath) {
+        return fromEnvironment(modulePath, Paths.get("").toAbsolutePath());
+    }
+
+    /**
+     * Like {@link #fromEnvironment(String)}, with relative entries and the
+     * default taken relative to {@code directory} instead of the working
+     * directory.
+     */
+    static ModulePath fromEnvironment(String modulePath, Path directory) {
+        if (modulePath == null || modulePath.isEmpty()) {
+            modulePath = System.getenv("LOX_PATH");
+        }
+        List<Path> roots = new ArrayList<>();
+        if (modulePath != null) {
+            for (String entry : modulePath.split(File.pathSeparator)) {
+                if (!entry.isEmpty()) {
+                    roots.add(directory.resolve(entry).normalize());
+                }
+            }
+        }
+        if (roots.isEmpty()) {
+            roots.add(directory);
+        }
+        return new ModulePath(roots);
+    }
+
+    public Path find(String name) throws IOException {
+        if (name.contains("/") || name.contains(File.separator)) {
+            for (Path root : roots) {
+                Path candidate = root.resolve(name);
+                if (Files.isRegularFile(candidate)) {
+                    return candidate.toRealPath();
+                }
+            }
+            throw new IOException("Can't find '" + name + "'.");
+        }
+
+        Index index = this.index;
+        if (index == null) {
+            index = rebuild(null);
+        }
+        Path found = lookup(index, name);
+        if (found == null && isStale(index)) {
+            index = rebuild(index);
+            found = lookup(index, name);
+        }
+        if (found == null && BundledModules.exists(name)) {
+            // bundled modules are the only ones with a relative path
+            return Paths.get(name);
+        }
+        if (found == null) {
+            throw new IOException("Can't find '" + name + "'.");
+        }
+        return found;
+    }
+
+    private Path lookup(Index index, String name) throws IOException {
+        for (Map<String, List<Path>> files : index.files) {
+            List<Path> found = files.get(name);
+            if (found == null) {
+                continue;
+            }
+            if (found.size() > 1) {
+                throw new IOException(found.size() + " modules named '" + name + "' found.");
+            }
+            Path path = found.getFirst();
+            return Files.isRegularFile(path) ? path : null;
+        }
+        return null;
+    }
+
+    private boolean isStale(Index index) throws IOException {
+        for (Map.Entry<Path, FileTime> directory : index.directories.entrySet()) {
+            if (!Files.isDirectory(directory.getKey())
+                || !Files.getLastModifiedTime(directory.getKey()).equals(directory.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized Index rebuild(Index stale) throws IOException {
+        if (index != stale) {
+            // another thread rebuilt it while this one was waiting
+            return index;
+        }
+        List<Map<String, List<Path>>> files = new ArrayList<>();
+        Map<Path, FileTime> directories = new HashMap<>();
+        for (Path root : roots) {
+            Map<String, List<Path>> rootFiles = new HashMap<>();
+            if (Files.isDirectory(root)) {
+                walk(root, rootFiles, directories);
+            }
+            files.add(rootFiles);
+        }
+        index = new Index(files, directories);
+        return index;
+    }
+
+    private void walk(Path root,
+                      Map<String, List<Path>> files,
+                      Map<Path, FileTime> directories) throws IOException {
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), MAX_DEPTH,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                        if (!dir.equals(root) && (name.equals("target") || name.startsWith("."))) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        directories.put(dir, attrs.lastModifiedTime());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        String name = file.getFileName().toString();
+                        if (attrs.isRegularFile() && name.endsWith(EXTENSION)) {
+                            files.computeIfAbsent(name, k -> new ArrayList<>()).add(file.toRealPath());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    private static class Index {
+        final List<Map<String, List<Path>>> files;
+        final Map<Path, FileTime> directories;
+
+        Index(List<Map<String, List<Path>>> files, Map<Path, FileTime> directories) {
+            this.files = files;
+            this.directories = directories;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps every module that was imported by one interpreter, keyed by its
+ * canonical path, so a module file is read, parsed and executed only once
+ * no matter how many times or from where it is imported. In lazy mode the
+ * body of a module runs on the first access to one of its members instead
+ * of at the import.
+ *
+ * <p>Tasks spawned by the interpreter share its modules. No lock is held
+ * while a module runs: the first import of a path claims it and loads it,
+ * imports of it from other tasks wait for that to finish, and an import of
+ * it from the task loading it, which is an import cycle, gets the module
+ * while it is still initializing.
+ */
+public class ModuleRegistry {
+    private final LoxEngine engine;
+    private final Map<Path, Loading> modules = new ConcurrentHashMap<>();
+
+    public ModuleRegistry(LoxEngine engine) {
+        this.engine = engine;
+    }
+
+    public LoxModule load(Interpreter interpreter, Token name) {
+        Path path;
+        try {
+            path = engine.getModulePath().find(name.literal.toString());
+        } catch (IOException e) {
+            throw new RuntimeError(name, "Error accessing module '" + name.literal + "': " + e.getMessage());
+        }
+
+        Loading loading = modules.computeIfAbsent(path, p -> new Loading());
+        if (loading.claim()) {
+            LoxMetrics.moduleLoad();
+            return load(interpreter, name, path, loading);
+        }
+        LoxMetrics.moduleCacheHit();
+        if (loading.loader == Thread.currentThread() && !loading.loaded.isDone()) {
+            // a module that is still initializing is returned as is, this is what
+            // breaks import cycles
+            return loading.module;
+        }
+        try {
+            return loading.loaded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(name, "Interrupted while waiting for module '" + name.literal + "'.");
+        } catch (ExecutionException e) {
+            throw new RuntimeError(name, "Error loading module '" + name.literal + "': " + e.getCause().getMessage());
+        }
+    }
+
+    private LoxModule load(Interpreter interpreter, Token name, Path path, Loading loading) {
+        LoxModule module = interpreter.newModule(path.getFileName().toString(), path);
+        loading.module = module;
+        LoxEvents.ModuleLoad event = null;
+        if (LoxEvents.recording()) {
+            event = new LoxEvents.ModuleLoad();
+            event.begin();
+        }
+        try {
+            // parsing and resolving always happen here so errors show up at the import,
+            // only running the body is deferred in lazy mode
+            module.compile(name, engine);
+            if (!engine.isLazyModules()) {
+                module.execute(interpreter);
+            }
+        } catch (RuntimeException | Error error) {
+            // the next import loads the module again, tasks waiting for this one fail
+            modules.remove(path, loading);
+            loading.loaded.completeExceptionally(error);
+            throw error;
+        } finally {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.module = module.name;
+                    event.path = path.toString();
+                    event.lazy = engine.isLazyModules();
+                    event.commit();
+                }
+            }
+        }
+        loading.loaded.complete(module);
+        return module;
+    }
+
+    /**
+     * Forgets {@code module}, so the next import of its file loads it again.
+     */
+    void remove(LoxModule module) {
+        modules.values().removeIf(loading -> loading.module == module);
+    }
+
+    /**
+     * Returns the loaded modules, including those still initializing, keyed
+     * by the string form of their path.
+     */
+    Map<String, LoxModule> getModules() {
+        Map<String, LoxModule> loaded = new HashMap<>();
+        for (Map.Entry<Path, Loading> entry : modules.entrySet()) {
+            LoxModule module = entry.getValue().module;
+            if (module != null) {
+                loaded.put(entry.getKey().toString(), module);
+            }
+        }
+        return loaded;
+    }
+
+    void restore(Map<String, LoxModule> loaded) {
+        for (Map.Entry<String, LoxModule> entry : loaded.entrySet()) {
+            Loading loading = new Loading();
+            loading.claim();
+            loading.module = entry.getValue();
+            loading.loaded.complete(entry.getValue());
+            modules.put(Paths.get(entry.getKey()), loading);
+        }
+    }
+
+    /**
+     * One module file, from the import that claims it until it is loaded.
+     */
+    private static class Loading {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<LoxModule> loaded = new CompletableFuture<>();
+        volatile Thread loader;
+        // set as soon as it is claimed, before its body runs
+        volatile LoxModule module;
+
+        boolean claim() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            loader = Thread.currentThread();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package interpreter.lox;
+
+import java.util.List;
+
+/**
+ * A method of a {@link LoxObject}, bound to the object it was read from.
+ */
+public class NativeMethod implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    private final String name;
+    private final int arity;
+    private final Body body;
+
+    public NativeMethod(String name, int arity, Body body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return body.call(interpreter, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native method " + name + ">";
+    }
+}
@@ -11,6 +11,8 @@ public class Parser {
     private static class ParseError extends RuntimeException {}
 
     private final List<Token> tokens;
+    private final ErrorReporter reporter;
+    private final List<String> imports = new ArrayList<>();
     private int current = 0;
 
     private boolean isBreakAvailable = false;
@@ -19,9 +21,11 @@ public class Parser {
     private boolean isFunction = false;
 
 
-    public Parser(List<Token> tokens) {
+    public Parser(List<Token> tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
     }
+
     public List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
         while (!isAtEnd()) {
@@ -30,7 +34,15 @@ public class Parser {
         return statements;
     }
 
+    public List<String> getImports() {
+        return imports;
+    }
+
     private Stmt declaration() {
+        return atLine(peek().line, parseDeclaration());
+    }
+
+    private Stmt parseDeclaration() {
         try {
             if (match(CLASS)) {
                 return classDeclaration();
@@ -102,11 +114,23 @@ public class Parser {
             alias = consume(IDENTIFIER, "Expect identifier after 'as'.");
         }
         consume(SEMICOLON, "Expect ';' after module import.");
+        imports.add(moduleFileName.literal.toString());
 
         return new Stmt.Import(moduleFileName, alias);
     }
 
     private Stmt statement() {
+        return atLine(peek().line, parseStatement());
+    }
+
+    private Stmt atLine(int line, Stmt stmt) {
+        if (stmt != null && stmt.line == 0) {
+            stmt.line = line;
+        }
+        return stmt;
+    }
+
+    private Stmt parseStatement() {
         if (match(PRINT)) {
             return printStatement();
         }
@@ -163,6 +187,7 @@ public class Parser {
     }
 
     private Stmt forStatement() {
+        int line = previous().line;
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         Stmt initializer;
@@ -199,7 +224,8 @@ public class Parser {
             condition = new Expr.Literal(true);
         }
 
-        body = new Stmt.While(condition, body);
+        // the loop gets the line of the for, the block around it only gets it later
+        body = atLine(line, new Stmt.While(condition, body));
 
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -406,7 +432,7 @@ public class Parser {
             return new Expr.Variable(previous());
         }
         if (match(QUESTION_MARK)) {
-            Lox.error(peek(), "Expect expression before ? operator.");
+            reporter.error(peek(), "Expect expression before ? operator.");
             return new Expr.Literal(null);
         }
         throw error(peek(), "Expect expression.");
@@ -453,7 +479,7 @@ public class Parser {
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
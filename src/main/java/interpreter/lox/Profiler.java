@@ -0,0 +1,174 @@
+package interpreter.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples the Lox call stacks of every interpreter of an engine from a
+ * background thread, once per interval, and reports where the samples
+ * fell: the hottest lines, the functions with the most time spent in them
+ * or in what they called, the call tree, and the raw stacks in the
+ * collapsed format flame graph tools read.
+ */
+public class Profiler {
+    private static final long INTERVAL_NANOS = 1_000_000;
+    private static final int HOT_LINES = 20;
+    private static final double TREE_CUTOFF = 0.01;
+
+    // held weakly, a stack goes away with its interpreter, like the one of a finished task
+    private final Queue<WeakReference<ShadowStack>> stacks = new ConcurrentLinkedQueue<>();
+    // written by the sampler only, read after it stopped
+    private final Map<String, Long> samples = new HashMap<>();
+    private long total = 0;
+
+    private final Thread sampler;
+    private volatile boolean running = true;
+
+    Profiler() {
+        this.sampler = Thread.ofPlatform().daemon().name("lox-profiler").start(this::run);
+    }
+
+    ShadowStack newStack() {
+        ShadowStack stack = new ShadowStack();
+        stacks.add(new WeakReference<>(stack));
+        return stack;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(INTERVAL_NANOS);
+            for (Iterator<WeakReference<ShadowStack>> it = stacks.iterator(); it.hasNext();) {
+                ShadowStack stack = it.next().get();
+                if (stack == null) {
+                    it.remove();
+                    continue;
+                }
+                String sample = stack.sample();
+                if (sample != null) {
+                    samples.merge(sample, 1L, Long::sum);
+                    total++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the hot lines, the functions and the call tree. Call after
+     * {@link #stop()}.
+     */
+    public void report(PrintStream out) {
+        out.printf("Profile: %d samples, one every %d ms%n", total, INTERVAL_NANOS / 1_000_000);
+        if (total == 0) {
+            return;
+        }
+
+        Map<String, Long> self = new HashMap<>();
+        Map<String, Long> functions = new HashMap<>();
+        Node root = new Node("");
+        for (Map.Entry<String, Long> sample : samples.entrySet()) {
+            String[] frames = sample.getKey().split(";");
+            long count = sample.getValue();
+            self.merge(frames[frames.length - 1], count, Long::sum);
+
+            Set<String> seen = new HashSet<>();
+            Node node = root;
+            for (String frame : frames) {
+                String function = function(frame);
+                // recursive functions count once per sample
+                if (seen.add(function)) {
+                    functions.merge(function, count, Long::sum);
+                }
+                node = node.children.computeIfAbsent(function, Node::new);
+                node.count += count;
+            }
+        }
+
+        out.println();
+        out.println("Hot lines (self)");
+        printTable(out, self, HOT_LINES, "line");
+        out.println();
+        out.println("Functions (total)");
+        printTable(out, functions, Integer.MAX_VALUE, "function");
+        out.println();
+        out.println("Call tree");
+        for (Node child : sorted(root.children)) {
+            printTree(out, child, 1);
+        }
+    }
+
+    /**
+     * Writes every distinct stack with its sample count, one per line, in
+     * the collapsed format read by flame graph tools.
+     */
+    public void writeCollapsed(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> sample : samples.entrySet()) {
+                out.println(sample.getKey() + " " + sample.getValue());
+            }
+        }
+    }
+
+    private void printTable(PrintStream out, Map<String, Long> counts, int limit, String column) {
+        List<Map.Entry<String, Long>> rows = new ArrayList<>(counts.entrySet());
+        rows.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        out.println("  samples       %  " + column);
+        for (Map.Entry<String, Long> row : rows.subList(0, Math.min(limit, rows.size()))) {
+            out.printf("  %7d  %5.1f%%  %s%n", row.getValue(), 100.0 * row.getValue() / total, row.getKey());
+        }
+    }
+
+    private void printTree(PrintStream out, Node node, int depth) {
+        if (node.count < total * TREE_CUTOFF) {
+            return;
+        }
+        out.printf("  %5.1f%%  %s%s%n", 100.0 * node.count / total, "  ".repeat(depth - 1), node.name);
+        for (Node child : sorted(node.children)) {
+            printTree(out, child, depth + 1);
+        }
+    }
+
+    private static List<Node> sorted(Map<String, Node> nodes) {
+        List<Node> sorted = new ArrayList<>(nodes.values());
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        return sorted;
+    }
+
+    private static String function(String frame) {
+        return frame.substring(0, frame.lastIndexOf(':'));
+    }
+
+    private static class Node {
+        final String name;
+        final Map<String, Node> children = new LinkedHashMap<>();
+        long count = 0;
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -6,8 +6,11 @@ import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
+    private final ErrorReporter reporter;
+    private final Map<Expr, Integer> locals = new HashMap<>();
     private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private int nodes = 0;
+    private int globals = 0;
 
     private enum FunctionType {
         NONE,
@@ -25,11 +28,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
     private ClassType currentClass = ClassType.NONE;
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    public Resolver(ErrorReporter reporter) {
+        this.reporter = reporter;
         beginScope();
     }
 
+    public Map<Expr, Integer> getLocals() {
+        return locals;
+    }
+
+    int getNodes() {
+        return nodes;
+    }
+
+    int getGlobals() {
+        return globals;
+    }
+
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
@@ -42,7 +57,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (!scopes.isEmpty()
             &&
             scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+            reporter.error(expr.name, "Can't read local variable in its own initializer.");
         }
 
         resolveLocal(expr, expr.name);
@@ -71,9 +86,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+            reporter.error(expr.keyword, "Can't use 'super' outside of a class.");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+            reporter.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
 
         resolveLocal(expr, expr.keyword);
@@ -83,11 +98,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+            reporter.error(expr.keyword, "Can't use 'this' outside of a class.");
             return null;
         }
         if (currentFunction == FunctionType.STATIC_METHOD) {
-            Lox.error(expr.keyword, "Can't access instance fields in static methods.");
+            reporter.error(expr.keyword, "Can't access instance fields in static methods.");
             return null;
         }
 
@@ -150,7 +165,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (stmt.superclass != null
             &&
             stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-            Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
+            reporter.error(stmt.superclass.name, "A class can't inherit from itself.");
         }
 
         if (stmt.superclass != null) {
@@ -247,11 +262,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyWord, "Can't return from top-level code.");
+            reporter.error(stmt.keyWord, "Can't return from top-level code.");
         }
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(stmt.keyWord, "Can't return a value from an initializer.");
+                reporter.error(stmt.keyWord, "Can't return a value from an initializer.");
             }
             resolve(stmt.value);
         }
@@ -265,6 +280,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitImportStmt(Stmt.Import stmt) {
+        if (!scopes.isEmpty()) {
+            scopes.peek().put(LoxModule.bindingName(stmt), true);
+        }
         return null;
     }
 
@@ -275,20 +293,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void resolve(Stmt statement) {
+        nodes++;
         statement.accept(this);
     }
 
     private void resolve(Expr expression) {
+        nodes++;
         expression.accept(this);
     }
 
     private void resolveLocal(Expr expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+                locals.put(expr, scopes.size() - 1 - i);
                 return;
             }
         }
+        globals++;
     }
 
     private void resolveFunction(Expr.AnFunction function, FunctionType type) {
@@ -311,7 +332,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
         Map<String,Boolean> scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
-            Lox.error(name, "Already a variable with this name in this scope.");
+            reporter.error(name, "Already a variable with this name in this scope.");
         }
         scope.put(name.lexeme, false);
     }
@@ -0,0 +1,19 @@
+package interpreter.lox;
+
+/**
+ * Thrown when a run goes past one of its {@link Limits}. It unwinds the
+ * whole run: no Lox code gets to handle it.
+ */
+public class ResourceLimitError extends RuntimeError {
+    private final int line;
+
+    public ResourceLimitError(int line, String message) {
+        super(null, message);
+        this.line = line;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+}
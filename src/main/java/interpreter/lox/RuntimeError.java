@@ -7,4 +7,8 @@ public class RuntimeError extends RuntimeException {
         super(message);
         this.token = token;
     }
+
+    public int getLine() {
+        return token == null ? 0 : token.line;
+    }
 }
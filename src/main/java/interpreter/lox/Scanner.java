@@ -6,6 +6,7 @@ import static interpreter.lox.TokenType.*;
 public class Scanner {
 
     private final String source;
+    private final ErrorReporter reporter;
     private final List<Token> tokens = new ArrayList<>();
 
     private int start = 0;
@@ -38,8 +39,9 @@ public class Scanner {
         keyWords.put("as",  AS);
     }
 
-    public Scanner(String source) {
+    public Scanner(String source, ErrorReporter reporter) {
         this.source = source;
+        this.reporter = reporter;
     }
 
     public List<Token> scanTokens() {
@@ -103,7 +105,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character: " + c + ".");
+                    reporter.error(line, "Unexpected character: " + c + ".");
                 }
                 break;
         }
@@ -136,7 +138,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
         // Put current after the " that close the string
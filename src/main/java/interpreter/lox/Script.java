@@ -0,0 +1,131 @@
+package interpreter.lox;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled script. The compiled code is never modified by running it, so
+ * the same script can be run many times, each run on a fresh interpreter
+ * whose globals start out as the natives plus the given bindings.
+ */
+public class Script {
+    final LoxEngine engine;
+    final CompiledScript compiled;
+    final String name;
+
+    private final Set<Cancellation> running = ConcurrentHashMap.newKeySet();
+
+    Script(LoxEngine engine, CompiledScript compiled, String name) {
+        this.engine = engine;
+        this.compiled = compiled;
+        this.name = name;
+    }
+
+    /**
+     * Runs the script with {@code bindings} defined as global variables.
+     * Numbers are converted to Lox numbers, other values are passed as is.
+     *
+     * @return the top level variables of the script after it finished
+     * @throws RuntimeError if the script fails while running
+     */
+    public Map<String, Object> run(Map<String, Object> bindings) {
+        return run(bindings, Limits.NONE);
+    }
+
+    /**
+     * Runs the script like {@link #run(Map)}, failing with a
+     * {@link ResourceLimitError} if it is still running after {@code timeout}.
+     */
+    public Map<String, Object> run(Map<String, Object> bindings, Duration timeout) {
+        return run(bindings, new Limits(0, timeout, 0));
+    }
+
+    /**
+     * Runs the script like {@link #run(Map)}, failing with a
+     * {@link ResourceLimitError} as soon as it goes past {@code limits}.
+     */
+    public Map<String, Object> run(Map<String, Object> bindings, Limits limits) {
+        return run(bindings, limits, limits.maxHeapBytes == 0 ? null : new HeapUsage());
+    }
+
+    /**
+     * Runs the script like {@link #run(Map, Limits)}, measuring the Lox
+     * objects it holds in {@code heap}, which can be read while the script
+     * runs and holds what the script left behind once it finished.
+     */
+    public Map<String, Object> run(Map<String, Object> bindings, Limits limits, HeapUsage heap) {
+        Interpreter interpreter = new Interpreter(engine);
+        Cancellation cancellation = new Cancellation();
+        interpreter.setLimits(limits, heap, cancellation);
+        if (heap != null) {
+            heap.limit(limits.maxHeapBytes);
+            heap.enter(interpreter);
+        }
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            interpreter.define(binding.getKey(), binding.getValue());
+        }
+        running.add(cancellation);
+        cancellation.start(interpreter, limits.timeout);
+        try {
+            run(interpreter);
+        } catch (RuntimeError error) {
+            if (cancellation.isCancelled() && !(error instanceof CancelledError || error instanceof ResourceLimitError)) {
+                // a wait cut short by the interrupt
+                throw cancellation.error(error.getLine());
+            }
+            throw error;
+        } finally {
+            running.remove(cancellation);
+            cancellation.finish();
+            if (heap != null) {
+                heap.measure();
+                heap.exit(interpreter);
+            }
+        }
+        return interpreter.getGlobals();
+    }
+
+    /**
+     * Stops every run of this script in progress at its next loop iteration
+     * or call, or in the wait it is in. Each of them fails with a
+     * {@link CancelledError}. The script and its engine can still be used.
+     */
+    public void cancel() {
+        for (Cancellation cancellation : running) {
+            cancellation.cancel();
+        }
+    }
+
+    void run(Interpreter interpreter) {
+        interpreter.getModule().label = name;
+        Coverage coverage = engine.getCoverage();
+        if (coverage != null) {
+            interpreter.getModule().coverage = coverage.file(name, compiled);
+        }
+        LoxEvents.Execute event = null;
+        if (LoxEvents.recording()) {
+            event = new LoxEvents.Execute();
+            event.begin();
+        }
+        long start = System.nanoTime();
+        try {
+            interpreter.resolve(compiled.locals);
+            interpreter.interpret(compiled.statements);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            LoxMetrics.executed(name, elapsed);
+            if (interpreter.getStatistics() != null) {
+                interpreter.getStatistics().executed(name, elapsed);
+            }
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.statements = compiled.statements.size();
+                    event.commit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package interpreter.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores compiled scripts in a directory as {@code <key>.loxc} files, where
+ * the key is a checksum of the source text and of the front end classes
+ * that compiled it, so a rebuilt interpreter never picks up entries written
+ * by an older one. An entry holds the source it was compiled from and is
+ * only used when its header matches the current format and that source is
+ * the one being run, anything else is treated as a miss and the script is
+ * compiled again. The syntax tree is stored in the compact form of
+ * {@link AstWriter}, which reads back faster than the source compiles.
+ * Scripts shorter than {@link #MIN_SOURCE} characters compile faster than
+ * an entry is found and read, so they are never cached.
+ */
+public class ScriptCache {
+    private static final int MAGIC = 0x4C4F5843; // "LOXC"
+    private static final int VERSION = 3;
+    private static final String EXTENSION = ".loxc";
+    private static final String[] FRONT_END = {
+            "Scanner.class", "Parser.class", "Resolver.class", "Expr.class", "Stmt.class",
+            "CompiledScript.class", "AstWriter.class", "AstReader.class"
+    };
+    static final int MIN_SOURCE = 4096;
+
+    private final Path directory;
+
+    public ScriptCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static ScriptCache fromEnvironment() {
+        String dir = System.getenv("LOX_CACHE_DIR");
+        if (dir != null && !dir.isEmpty()) {
+            return new ScriptCache(Paths.get(dir));
+        }
+        return new ScriptCache(Paths.get(System.getProperty("user.home"), ".jlox", "cache"));
+    }
+
+    public CompiledScript load(String source) {
+        if (source.length() < MIN_SOURCE) {
+            return null;
+        }
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        Path file = directory.resolve(key(bytes) + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            // an entry for another source with the same key is left for store to replace
+            return read(in, bytes);
+        } catch (IOException e) {
+            // corrupted entry, compile from source instead
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    public void store(String source, CompiledScript script) {
+        if (source.length() < MIN_SOURCE) {
+            return;
+        }
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        String key = key(bytes);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                write(out, bytes, script);
+            }
+            Files.move(temp, directory.resolve(key + EXTENSION),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is only an optimization, a failed write just means a miss next time
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a compiled script written by {@link #write}, or returns null if
+     * it was compiled from another source or by another interpreter version.
+     */
+    private static CompiledScript read(InputStream stream, byte[] source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != fingerprint()
+                || in.readInt() != source.length) {
+            return null;
+        }
+        byte[] compiled = new byte[source.length];
+        in.readFully(compiled);
+        if (!Arrays.equals(compiled, source)) {
+            return null;
+        }
+        return AstReader.read(in);
+    }
+
+    private static void write(OutputStream stream, byte[] source, CompiledScript script) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(fingerprint());
+        out.writeInt(source.length);
+        out.write(source);
+        AstWriter.write(out, script);
+        out.flush();
+    }
+
+    private static String key(byte[] source) {
+        CRC32C first = new CRC32C();
+        CRC32 second = new CRC32();
+        first.update(ByteBuffer.allocate(Integer.BYTES).putInt(fingerprint()).flip());
+        second.update(ByteBuffer.allocate(Integer.BYTES).putInt(fingerprint()).flip());
+        first.update(source);
+        second.update(source);
+        return HexFormat.of().toHexDigits(first.getValue() << 32 | second.getValue());
+    }
+
+    /**
+     * Returns a checksum of the front end classes, which tells entries and
+     * snapshots written by another build of the interpreter apart.
+     */
+    static int fingerprint() {
+        return Fingerprint.VALUE;
+    }
+
+    // a checksum is enough, entries are matched against the full source, and
+    // costs a fraction of setting up a cryptographic digest on a cold JVM
+    private static final class Fingerprint {
+        static final int VALUE = compute();
+    }
+
+    private static int compute() {
+        CRC32C checksum = new CRC32C();
+        for (String name : FRONT_END) {
+            try (InputStream in = ScriptCache.class.getResourceAsStream(name)) {
+                if (in != null) {
+                    checksum.update(in.readAllBytes());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return (int) checksum.getValue();
+    }
+}
@@ -0,0 +1,63 @@
+package interpreter.lox;
+
+/**
+ * The Lox call stack of one interpreter, kept only while profiling: the
+ * name of every active function and the line each one is executing. Only
+ * the interpreter's thread writes it. The profiler reads it from its own
+ * thread without locking, a sample taken while a frame is pushed or popped
+ * may be off by that frame, which sampling tolerates.
+ */
+final class ShadowStack {
+    private volatile String[] names = new String[64];
+    private volatile int[] lines = new int[64];
+    private volatile int depth = 0;
+
+    void push(String name, int line) {
+        if (depth == names.length) {
+            grow();
+        }
+        names[depth] = name;
+        lines[depth] = line;
+        depth++;
+    }
+
+    void pop() {
+        depth--;
+    }
+
+    void line(int line) {
+        if (depth > 0) {
+            lines[depth - 1] = line;
+        }
+    }
+
+    /**
+     * Returns the stack from the outermost frame as {@code name:line}
+     * frames separated by semicolons, or null if no Lox code is running.
+     */
+    String sample() {
+        String[] names = this.names;
+        int[] lines = this.lines;
+        int depth = Math.min(this.depth, Math.min(names.length, lines.length));
+        if (depth <= 0) {
+            return null;
+        }
+        StringBuilder frames = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            if (i > 0) {
+                frames.append(';');
+            }
+            frames.append(names[i]).append(':').append(lines[i]);
+        }
+        return frames.toString();
+    }
+
+    private void grow() {
+        String[] names = new String[this.names.length * 2];
+        int[] lines = new int[names.length];
+        System.arraycopy(this.names, 0, names, 0, depth);
+        System.arraycopy(this.lines, 0, lines, 0, depth);
+        this.lines = lines;
+        this.names = names;
+    }
+}
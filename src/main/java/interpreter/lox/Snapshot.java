@@ -0,0 +1,183 @@
+package interpreter.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputFilter;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Saves the state an init script leaves behind, its top level variables,
+ * classes, instances, closures and imported modules, so later runs can
+ * start from it instead of running the init script again.
+ *
+ * <p>Natives are not saved, references to them are written by name and
+ * bound to the natives of the interpreter that resumes. Values that only
+ * make sense while running, such as tasks, channels and actors, cannot be
+ * saved. A snapshot is only read back by the same interpreter build that
+ * wrote it.
+ */
+public final class Snapshot {
+    private static final int MAGIC = 0x4C4F5853; // "LOXS"
+    private static final int VERSION = 2;
+
+    /**
+     * Only lets the interpreter's own classes and the {@code java.lang} and
+     * {@code java.util} types they are built from out of a snapshot, within
+     * bounds on size, so a crafted file passed to {@code --resume} can't
+     * instantiate anything else. Syntax trees nest as deep as the scripts
+     * they come from, so the depth is left to the stack of the reading
+     * thread, which fails the read when it runs out.
+     */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=1000000;maxrefs=10000000;maxarray=10000000;"
+            + "interpreter.lox.*;java.lang.*;java.util.*;!*");
+
+    private Snapshot() {
+    }
+
+    /**
+     * Runs {@code init} and writes the state it leaves behind to {@code file}.
+     *
+     * @throws RuntimeError if the init script fails
+     * @throws IOException  if the state holds values that cannot be saved
+     *                      or the file cannot be written
+     */
+    public static void create(Script init, Path file) throws IOException {
+        Interpreter interpreter = new Interpreter(init.engine);
+        init.run(interpreter);
+        write(interpreter, file);
+    }
+
+    /**
+     * Restores the state saved in {@code file} and runs {@code script} on
+     * top of it with {@code bindings} defined as global variables.
+     *
+     * @return the top level variables after the script finished
+     * @throws RuntimeError if the script fails while running
+     * @throws IOException  if the file is not a snapshot of this build
+     */
+    public static Map<String, Object> resume(Path file, Script script, Map<String, Object> bindings)
+            throws IOException {
+        Interpreter interpreter = read(script.engine, file);
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            interpreter.define(binding.getKey(), binding.getValue());
+        }
+        script.run(interpreter);
+        return interpreter.getGlobals();
+    }
+
+    static void write(Interpreter interpreter, Path file) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 Writer out = new Writer(new BufferedOutputStream(stream), interpreter.getNatives())) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ScriptCache.fingerprint());
+                out.writeObject(interpreter.getModule());
+                out.writeObject(interpreter.getModules().getModules());
+            } catch (NotSerializableException e) {
+                throw new IOException("Can't save a value of type " + e.getMessage() + ".");
+            } catch (StackOverflowError e) {
+                throw new IOException("Can't save values nested this deep.");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Interpreter read(LoxEngine engine, Path file) throws IOException {
+        Interpreter interpreter = new Interpreter(engine);
+        try (InputStream stream = Files.newInputStream(file);
+             Reader in = new Reader(new BufferedInputStream(stream), interpreter.getNatives())) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != ScriptCache.fingerprint()) {
+                throw new IOException(file + " is not a snapshot of this interpreter.");
+            }
+            LoxModule main = (LoxModule) in.readObject();
+            Map<String, LoxModule> modules = (Map<String, LoxModule>) in.readObject();
+            interpreter.restore(main);
+            interpreter.getModules().restore(modules);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(file + " is not a snapshot of this interpreter.", e);
+        } catch (StackOverflowError e) {
+            throw new IOException(file + " holds values nested too deep to read back.");
+        }
+        return interpreter;
+    }
+
+    /**
+     * Stands for the natives environment, or for the native named
+     * {@code name} in it, inside a snapshot.
+     */
+    private static class Native implements Serializable {
+        final String name;
+
+        Native(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Writer extends ObjectOutputStream {
+        private final Environment natives;
+        private final Map<Object, String> names = new IdentityHashMap<>();
+
+        Writer(OutputStream out, Environment natives) throws IOException {
+            super(out);
+            this.natives = natives;
+            for (Map.Entry<String, Object> entry : natives.getValues().entrySet()) {
+                names.put(entry.getValue(), entry.getKey());
+            }
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj == natives) {
+                return new Native(null);
+            }
+            String name = names.get(obj);
+            return name == null ? obj : new Native(name);
+        }
+    }
+
+    private static class Reader extends ObjectInputStream {
+        private final Environment natives;
+
+        Reader(InputStream in, Environment natives) throws IOException {
+            super(in);
+            this.natives = natives;
+            setObjectInputFilter(FILTER);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws ObjectStreamException {
+            if (!(obj instanceof Native ref)) {
+                return obj;
+            }
+            if (ref.name == null) {
+                return natives;
+            }
+            Map<String, Object> values = natives.getValues();
+            if (!values.containsKey(ref.name)) {
+                throw new InvalidObjectException("Unknown native '" + ref.name + "'.");
+            }
+            return values.get(ref.name);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package interpreter.lox;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times the phases of a run: scanning, parsing and resolving of the script
+ * and of every module it imports, and their execution. Also reads the peak
+ * heap and the collections of every garbage collector from the JVM's
+ * management beans, as the difference from when the statistics started.
+ *
+ * <p>Modules run from inside the script that imports them, so the
+ * execution time of a script includes that of its modules.
+ */
+public class Statistics {
+    private final Map<String, Unit> units = new LinkedHashMap<>();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final long[] collections;
+    private final long[] collectionMillis;
+
+    Statistics() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        collections = new long[collectors.size()];
+        collectionMillis = new long[collectors.size()];
+        for (int i = 0; i < collectors.size(); i++) {
+            collections[i] = collectors.get(i).getCollectionCount();
+            collectionMillis[i] = collectors.get(i).getCollectionTime();
+        }
+    }
+
+    synchronized void compiled(String name,
+                               int tokens,
+                               long scanNanos,
+                               int nodes,
+                               long parseNanos,
+                               int locals,
+                               int globals,
+                               long resolveNanos) {
+        Unit unit = unit(name);
+        unit.tokens = tokens;
+        unit.scanNanos = scanNanos;
+        unit.nodes = nodes;
+        unit.parseNanos = parseNanos;
+        unit.locals = locals;
+        unit.globals = globals;
+        unit.resolveNanos = resolveNanos;
+        unit.compiled = true;
+    }
+
+    synchronized void cached(String name) {
+        unit(name).cached = true;
+    }
+
+    synchronized void executed(String name, long nanos) {
+        unit(name).executeNanos += nanos;
+    }
+
+    private Unit unit(String name) {
+        return units.computeIfAbsent(name, k -> new Unit());
+    }
+
+    public synchronized void report(PrintStream out) {
+        out.println("Statistics:");
+        for (Map.Entry<String, Unit> entry : units.entrySet()) {
+            Unit unit = entry.getValue();
+            out.println();
+            out.println("  " + entry.getKey() + (unit.cached ? " (loaded from cache)" : ""));
+            if (unit.compiled) {
+                out.printf("    scan     %10s  %8d tokens%n", millis(unit.scanNanos), unit.tokens);
+                out.printf("    parse    %10s  %8d nodes%n", millis(unit.parseNanos), unit.nodes);
+                out.printf("    resolve  %10s  %8d locals  %d globals%n",
+                        millis(unit.resolveNanos), unit.locals, unit.globals);
+            }
+            out.printf("    execute  %10s%n", millis(unit.executeNanos));
+        }
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        out.println();
+        out.printf("  peak heap  %.1f MB%n", peak / (1024.0 * 1024.0));
+        for (int i = 0; i < collectors.size(); i++) {
+            GarbageCollectorMXBean collector = collectors.get(i);
+            out.printf("  gc  %-24s %6d collections %8d ms%n",
+                    collector.getName(),
+                    collector.getCollectionCount() - collections[i],
+                    collector.getCollectionTime() - collectionMillis[i]);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    private static class Unit {
+        boolean compiled;
+        boolean cached;
+        int tokens;
+        long scanNanos;
+        int nodes;
+        long parseNanos;
+        int locals;
+        int globals;
+        long resolveNanos;
+        long executeNanos;
+    }
+}
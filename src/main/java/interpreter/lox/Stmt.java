@@ -1,8 +1,12 @@
 package interpreter.lox;
 
+import java.io.Serializable;
 import java.util.List;
 
-abstract class Stmt {
+abstract class Stmt implements Serializable {
+    // line the statement starts on, 0 for statements made up by the parser
+    int line;
+
     interface Visitor<R> {
         R visitClassStmt(Class stmt);
         R visitVarStmt(Var stmt);
@@ -0,0 +1,28 @@
+package interpreter.lox;
+
+/**
+ * Fixed table of lock objects shared by all environments and instances in
+ * concurrent mode. An object always maps to the same stripe, so a few
+ * hundred locks cover any number of objects without giving each one its
+ * own monitor. Callers never hold two stripes at once, which keeps the
+ * scheme free of lock ordering deadlocks.
+ */
+final class StripedLocks {
+    private static final int STRIPES = 256;
+    private static final Object[] LOCKS = new Object[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private StripedLocks() {
+    }
+
+    static Object of(Object object) {
+        int hash = System.identityHashCode(object);
+        hash ^= (hash >>> 16);
+        return LOCKS[hash & (STRIPES - 1)];
+    }
+}
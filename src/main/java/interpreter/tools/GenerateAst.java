@@ -49,9 +49,16 @@ public class GenerateAst {
         writer.println("package interpreter.lox;");
 
         writer.println();
+        writer.println("import java.io.Serializable;");
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("abstract class " + baseName + " {");
+        writer.println("abstract class " + baseName + " implements Serializable {");
+
+        if (baseName.equals("Stmt")) {
+            writer.println("    // line the statement starts on, 0 for statements made up by the parser");
+            writer.println("    int line;");
+            writer.println();
+        }
 
         defineVisitor(writer, baseName, types);
         writer.println();